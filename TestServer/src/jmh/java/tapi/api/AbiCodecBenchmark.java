@@ -0,0 +1,136 @@
+package tapi.api;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.FunctionReturnDecoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.Utils;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Bool;
+import org.web3j.abi.datatypes.DynamicArray;
+import org.web3j.abi.datatypes.DynamicBytes;
+import org.web3j.abi.datatypes.DynamicStruct;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.Utf8String;
+import org.web3j.abi.datatypes.generated.Uint256;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TipOffer calldata encoding and result decoding with TipOfferCodec, against web3j's
+ * FunctionEncoder/FunctionReturnDecoder doing the same job as the baseline.
+ *
+ * web3j can't decode the PaymentToken array inside getTips' TipQuery structs, which is why the server used to
+ * call getTip once per tip; decodeTipsWeb3j decodes that many getTip results instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AbiCodecBenchmark
+{
+    @Param({ "1", "10", "500" })
+    public int tipCount;
+
+    private List<BigInteger> tipIds;
+    private byte[] attestation;
+    private List<PaymentToken> paymentTokens;
+    private String tipsResult;
+    private List<String> tipResults;
+
+    @Setup
+    public void setup()
+    {
+        tipIds = BenchmarkData.tipIds(tipCount);
+        attestation = BenchmarkData.attestation();
+        paymentTokens = BenchmarkData.paymentTokens(Math.min(tipCount, 10));
+        tipsResult = BenchmarkData.getTipsResult(tipCount);
+        tipResults = BenchmarkData.getTipResults(tipCount);
+    }
+
+    @Benchmark
+    public byte[] collectTipCodec()
+    {
+        return TipOfferCodec.encodeCollectTip(tipIds, attestation);
+    }
+
+    @Benchmark
+    public String collectTipWeb3j()
+    {
+        List<Uint256> ids = new ArrayList<>(tipIds.size());
+        for (BigInteger tipId : tipIds) ids.add(new Uint256(tipId));
+        Function collectTip = new Function("collectTip",
+                Arrays.asList(new DynamicArray<>(Uint256.class, ids), new DynamicBytes(attestation)),
+                Arrays.<TypeReference<?>>asList(new TypeReference<Bool>() {}));
+        return FunctionEncoder.encode(collectTip);
+    }
+
+    @Benchmark
+    public byte[] createTipCodec()
+    {
+        return TipOfferCodec.encodeCreateTip(paymentTokens, BenchmarkData.IDENTIFIER);
+    }
+
+    @Benchmark
+    public String createTipWeb3j()
+    {
+        //PaymentToken's own struct value leaves out the auth bytes, so encode each as (address,uint256,bytes)
+        List<DynamicStruct> tokens = new ArrayList<>(paymentTokens.size());
+        for (PaymentToken token : paymentTokens) tokens.add(new DynamicStruct(token.address, token.value, token.auth));
+        Function createTip = new Function("createTip",
+                Arrays.asList(new DynamicArray<>(DynamicStruct.class, tokens), new Utf8String(BenchmarkData.IDENTIFIER)),
+                Collections.emptyList());
+        return FunctionEncoder.encode(createTip);
+    }
+
+    @Benchmark
+    public byte[] getTipsCallCodec()
+    {
+        return TipOfferCodec.encodeGetTips(tipIds);
+    }
+
+    @Benchmark
+    public List<TipQuery> decodeTipsCodec()
+    {
+        return TipOfferCodec.decodeTips(tipsResult);
+    }
+
+    @Benchmark
+    public List<Tip> decodeTipsWeb3j()
+    {
+        List<Tip> tips = new ArrayList<>(tipResults.size());
+        for (String result : tipResults)
+        {
+            //getTip's outputs, as the server built them for each tip
+            List<?> values = FunctionReturnDecoder.decode(result, Utils.convert(Arrays.<TypeReference<?>>asList(
+                    new TypeReference<DynamicArray<PaymentToken>>() {}, new TypeReference<Address>() {},
+                    new TypeReference<Uint256>() {}, new TypeReference<Utf8String>() {},
+                    new TypeReference<Address>() {}, new TypeReference<Bool>() {})));
+            List<?> tokens = (List<?>) ((Type<?>) values.get(0)).getValue();
+            PaymentToken[] paymentTokens = new PaymentToken[tokens.size()];
+            for (int i = 0; i < paymentTokens.length; i++) paymentTokens[i] = (PaymentToken) tokens.get(i);
+            tips.add(new Tip(paymentTokens, (BigInteger) ((Type<?>) values.get(2)).getValue(),
+                    values.get(1).toString(), values.get(3).toString(), values.get(4).toString(),
+                    (Boolean) ((Type<?>) values.get(5)).getValue()));
+        }
+        return tips;
+    }
+}
@@ -0,0 +1,194 @@
+package tapi.api;
+
+import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.util.SubjectPublicKeyInfoFactory;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.utils.Numeric;
+import tapi.api.crypto.CoSignedIdentifierAttestation;
+import tapi.api.crypto.SignedIdentifierAttestation;
+import tapi.api.crypto.core.SignatureUtility;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static tapi.api.crypto.core.SignatureUtility.ECDSA_DOMAIN;
+
+/**
+ * The attestation constructors (each of which verifies what it's given) and the crypto of the two claim steps:
+ * generateAttestation (recover the wallet key, issue a SignedIdentifierAttestation) and generatedCoSigned (restore it
+ * and bind the wallet's signature). The attestation carries the time it was issued, so the full sequence has to
+ * sign it with the wallet key each time as the browser would; walletSign measures that part alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AttestationBenchmark
+{
+    private static final String ATTESTOR_KEY = "0x8da4ef21b864d2cc526dbdb2a120bd2874c36c9d0a1fb7f8c63d7f7a8b41de8f";
+    private static final BigInteger WALLET_KEY = Numeric.toBigInt("0x4c0883a69102937d6231471b5dbb6204fe5129617082792ae468d01a3f362318");
+    private static final String MESSAGE = "Please sign this message to acquire your public attestation.";
+    private static final String ID = "1234567890123456789";
+    private static final String USERNAME = "cryptonomicon";
+    private static final int BULK_COUNT = 64;
+
+    private ECPrivateKeyParameters walletKey;
+    private ECPublicKeyParameters walletPublicKey;
+    private String walletAddress;
+    private byte[] messageSignature;
+    private String hexMessage;
+    private byte[] hexMessageSignature;
+    private SignedIdentifierAttestation signedAttestation;
+    private byte[] signedAttestationDer;
+    private byte[] walletSpki;
+    private byte[] coSignature;
+    private byte[] coSignedDer;
+    private List<byte[]> bulkCoSignedDers;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        AttestationHandler.setupKeys(ATTESTOR_KEY);
+        walletKey = new ECPrivateKeyParameters(WALLET_KEY, ECDSA_DOMAIN);
+        walletPublicKey = new ECPublicKeyParameters(new FixedPointCombMultiplier().multiply(ECDSA_DOMAIN.getG(), WALLET_KEY), ECDSA_DOMAIN);
+        walletAddress = SignatureUtility.addressFromKey(walletPublicKey);
+        messageSignature = SignatureUtility.signPersonalMsgWithEthereum(MESSAGE.getBytes(), walletKey);
+        //MetaMask is handed the message as hex and signs the bytes it decodes to
+        hexMessage = Numeric.toHexString(MESSAGE.getBytes());
+        hexMessageSignature = SignatureUtility.signPersonalMsgWithEthereum(MESSAGE.getBytes(), walletKey);
+
+        signedAttestation = AttestationHandler.createPublicAttestation(walletPublicKey, ID, APIController.TWITTER_URL + USERNAME);
+        signedAttestationDer = signedAttestation.getDerEncoding();
+        walletSpki = SubjectPublicKeyInfoFactory.createSubjectPublicKeyInfo(walletPublicKey).getEncoded();
+        coSignature = SignatureUtility.signPersonalMsgWithEthereum(signedAttestationDer, walletKey);
+        coSignedDer = new CoSignedIdentifierAttestation(signedAttestation, walletPublicKey, coSignature).getDerEncoding();
+
+        //a stored set of attestations, each for a different wallet
+        Random random = new Random(42);
+        bulkCoSignedDers = new ArrayList<>(BULK_COUNT);
+        for (int i = 0; i < BULK_COUNT; i++)
+        {
+            BigInteger key = new BigInteger(255, random).add(BigInteger.ONE);
+            ECPublicKeyParameters publicKey = new ECPublicKeyParameters(SignatureUtility.multiplyBase(key).normalize(), ECDSA_DOMAIN);
+            SignedIdentifierAttestation att = AttestationHandler.createPublicAttestation(publicKey, ID + i, APIController.TWITTER_URL + USERNAME + i);
+            byte[] signature = SignatureUtility.signPersonalMsgWithEthereum(att.getDerEncoding(), new ECPrivateKeyParameters(key, ECDSA_DOMAIN));
+            bulkCoSignedDers.add(new CoSignedIdentifierAttestation(att, publicKey, signature).getDerEncoding());
+        }
+    }
+
+    /***********************************
+     * Constructors
+     ***********************************/
+
+    @Benchmark
+    public SignedIdentifierAttestation signedAttestationIssue()
+    {
+        return AttestationHandler.createPublicAttestation(walletPublicKey, ID, APIController.TWITTER_URL + USERNAME);
+    }
+
+    @Benchmark
+    public SignedIdentifierAttestation signedAttestationRestore() throws IOException
+    {
+        return AttestationHandler.restoreSignedAttestation(signedAttestationDer);
+    }
+
+    @Benchmark
+    public CoSignedIdentifierAttestation coSignedAttestation()
+    {
+        return new CoSignedIdentifierAttestation(signedAttestation, walletPublicKey, coSignature);
+    }
+
+    @Benchmark
+    public CoSignedIdentifierAttestation coSignedAttestationRestore() throws IOException
+    {
+        return AttestationHandler.restoreCoSignedAttestation(coSignedDer);
+    }
+
+    // BULK_COUNT stored attestations restored one at a time, and checked together
+    @Benchmark
+    public int bulkRestore() throws IOException
+    {
+        int restored = 0;
+        for (byte[] der : bulkCoSignedDers)
+        {
+            if (AttestationHandler.restoreCoSignedAttestation(der) != null) restored++;
+        }
+        return restored;
+    }
+
+    @Benchmark
+    public List<AttestationHandler.VerifiedAttestation> bulkVerify()
+    {
+        return AttestationHandler.verifyCoSignedAttestations(bulkCoSignedDers);
+    }
+
+    /***********************************
+     * Claim steps
+     ***********************************/
+
+    @Benchmark
+    public byte[] generateAttestation() throws SignatureException, IOException
+    {
+        return issue();
+    }
+
+    @Benchmark
+    public AsymmetricKeyParameter recoverSubjectKey() throws SignatureException
+    {
+        return APIController.recoverSubjectKey(walletAddress, MESSAGE, messageSignature);
+    }
+
+    @Benchmark
+    public AsymmetricKeyParameter recoverSubjectKeyMetaMask() throws SignatureException
+    {
+        return APIController.recoverSubjectKey(walletAddress, hexMessage, hexMessageSignature);
+    }
+
+    @Benchmark
+    public byte[] generatedCoSigned() throws IOException
+    {
+        return APIController.coSignAttestation(signedAttestationDer, walletSpki, coSignature).getDerEncoding();
+    }
+
+    @Benchmark
+    public byte[] walletSign()
+    {
+        return SignatureUtility.signPersonalMsgWithEthereum(signedAttestationDer, walletKey);
+    }
+
+    @Benchmark
+    public byte[] fullSequence() throws SignatureException, IOException
+    {
+        byte[] attestationDer = issue();
+        byte[] signature = SignatureUtility.signPersonalMsgWithEthereum(attestationDer, walletKey);
+        return APIController.coSignAttestation(attestationDer, walletSpki, signature).getDerEncoding();
+    }
+
+    // What generateAttestation hands the page: the recovered key's SPKI and the signed attestation
+    private byte[] issue() throws SignatureException, IOException
+    {
+        AsymmetricKeyParameter subjectKey = APIController.recoverSubjectKey(walletAddress, MESSAGE, messageSignature);
+        SignedIdentifierAttestation att = AttestationHandler.createPublicAttestation(subjectKey, ID, APIController.TWITTER_URL + USERNAME);
+        SubjectPublicKeyInfoFactory.createSubjectPublicKeyInfo(subjectKey).getEncoded();
+        return att.getDerEncoding();
+    }
+}
@@ -0,0 +1,136 @@
+package tapi.api;
+
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Bool;
+import org.web3j.abi.datatypes.DynamicArray;
+import org.web3j.abi.datatypes.DynamicBytes;
+import org.web3j.abi.datatypes.DynamicStruct;
+import org.web3j.abi.datatypes.Utf8String;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.crypto.Hash;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Realistic inputs for the benchmarks, built the same way for every run so results can be compared
+ */
+class BenchmarkData
+{
+    static final String CONTRACT = "0xE6aAf7C1bBD92B6FFa76ADF47816572EC9f5Ba76";
+    static final String IDENTIFIER = "https://twitter.com/cryptonomicon 1234567890123456789";
+    static final long CHAIN_ID = 4;
+
+    static List<BigInteger> tipIds(int count)
+    {
+        List<BigInteger> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            ids.add(BigInteger.valueOf(1000 + i * 7));
+        }
+        return ids;
+    }
+
+    // Roughly the size of a CoSignedIdentifierAttestation DER
+    static byte[] attestation()
+    {
+        byte[] der = new byte[420];
+        new Random(42).nextBytes(der);
+        return der;
+    }
+
+    static List<PaymentToken> paymentTokens(int count)
+    {
+        List<PaymentToken> tokens = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            tokens.add(new PaymentToken(new Address(address(i)), new Uint256(BigInteger.TEN.pow(18).add(BigInteger.valueOf(i))),
+                    new DynamicBytes(new byte[] { 0x00 })));
+        }
+        return tokens;
+    }
+
+    /**
+     * getTips(uint256[]) return data for count tips, every other one carrying an ERC20 payment
+     */
+    static String getTipsResult(int count)
+    {
+        List<DynamicStruct> tips = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            List<DynamicStruct> tokens = new ArrayList<>();
+            if (i % 2 == 0)
+            {
+                tokens.add(new DynamicStruct(new Address(address(i)), new Uint256(BigInteger.valueOf(5000 + i)),
+                        new DynamicBytes(new byte[] { 0x00 })));
+            }
+            tips.add(new DynamicStruct(new DynamicArray<>(DynamicStruct.class, tokens),
+                    new Uint256(BigInteger.TEN.pow(16).multiply(BigInteger.valueOf(i + 1))), new Bool(i % 5 == 0)));
+        }
+        return "0x" + FunctionEncoder.encodeConstructor(Collections.singletonList(new DynamicArray<>(DynamicStruct.class, tips)));
+    }
+
+    /**
+     * getTip(uint256) return data for each of count tips, matching getTipsResult
+     */
+    static List<String> getTipResults(int count)
+    {
+        List<String> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            List<DynamicStruct> tokens = new ArrayList<>();
+            if (i % 2 == 0)
+            {
+                tokens.add(new DynamicStruct(new Address(address(i)), new Uint256(BigInteger.valueOf(5000 + i)),
+                        new DynamicBytes(new byte[] { 0x00 })));
+            }
+            results.add("0x" + FunctionEncoder.encodeConstructor(Arrays.asList(new DynamicArray<>(DynamicStruct.class, tokens),
+                    new Address(address(i + 1)), new Uint256(BigInteger.TEN.pow(16).multiply(BigInteger.valueOf(i + 1))),
+                    new Utf8String(IDENTIFIER), new Address(address(i + 2)), new Bool(i % 5 == 0))));
+        }
+        return results;
+    }
+
+    /**
+     * eth_getLogs JSON-RPC response with count CreateTip logs, as a node returns it
+     */
+    static String getLogsResponse(int count)
+    {
+        String identifierTopic = TipIndexer.identifierHash(IDENTIFIER);
+        StringBuilder sb = new StringBuilder("{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":[");
+        for (int i = 0; i < count; i++)
+        {
+            if (i > 0) sb.append(',');
+            String block = Numeric.toHexStringWithPrefix(BigInteger.valueOf(9000000 + i));
+            sb.append("{\"address\":\"").append(CONTRACT.toLowerCase()).append("\",")
+                    .append("\"topics\":[\"").append(TipLogReader.CREATE_TIP_TOPIC).append("\",\"")
+                    .append(Numeric.toHexStringWithPrefixZeroPadded(Numeric.toBigInt(address(i)), 64)).append("\",\"")
+                    .append(identifierTopic).append("\",\"")
+                    .append(Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(1000 + i * 7), 64)).append("\"],")
+                    .append("\"data\":\"0x\",")
+                    .append("\"blockNumber\":\"").append(block).append("\",")
+                    .append("\"transactionHash\":\"").append(hash(i)).append("\",")
+                    .append("\"transactionIndex\":\"0x1\",")
+                    .append("\"blockHash\":\"").append(hash(i + 1000000)).append("\",")
+                    .append("\"logIndex\":\"0x0\",")
+                    .append("\"removed\":false}");
+        }
+        return sb.append("]}").toString();
+    }
+
+    static String address(int i)
+    {
+        return Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(0x1000 + i).shiftLeft(80), 40);
+    }
+
+    private static String hash(int i)
+    {
+        return Numeric.toHexString(Hash.sha3(BigInteger.valueOf(i).toByteArray()));
+    }
+}
@@ -0,0 +1,79 @@
+package tapi.api;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.web3j.abi.EventValues;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Event;
+import org.web3j.abi.datatypes.Utf8String;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.Log;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.web3j.tx.Contract.staticExtractEventParameters;
+
+/**
+ * CreateTip log pickup from an eth_getLogs response of tipCount logs: TipLogReader's streaming parse, against
+ * reading the whole response into EthLog and running each log through staticExtractEventParameters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogDecodeBenchmark
+{
+    @Param({ "1", "10", "500" })
+    public int tipCount;
+
+    private String response;
+    private Event createTip;
+
+    @Setup
+    public void setup()
+    {
+        response = BenchmarkData.getLogsResponse(tipCount);
+        createTip = new Event("CreateTip", Arrays.<TypeReference<?>>asList(
+                new TypeReference<Address>(true) {}, new TypeReference<Utf8String>(true) {}, new TypeReference<Uint256>(true) {}));
+    }
+
+    @Benchmark
+    public void streaming(Blackhole bh) throws IOException
+    {
+        TipLogReader.readCreateTips(new StringReader(response), (tipId, offerer) -> {
+            bh.consume(tipId);
+            bh.consume(offerer);
+        });
+    }
+
+    @Benchmark
+    public void web3jEventValues(Blackhole bh) throws IOException
+    {
+        EthLog logs = ObjectMapperFactory.getObjectMapper().readValue(response, EthLog.class);
+        for (EthLog.LogResult<?> ethLog : logs.getLogs())
+        {
+            EventValues eventValues = staticExtractEventParameters(createTip, (Log) ethLog.get());
+            bh.consume(new BigInteger(eventValues.getIndexedValues().get(2).getValue().toString()));
+            bh.consume(eventValues.getIndexedValues().get(0).getValue().toString());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package tapi.api;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.crypto.ECKeyPair;
+import org.web3j.crypto.RawTransaction;
+import org.web3j.crypto.Sign;
+import org.web3j.crypto.TransactionEncoder;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Claim transaction signing: RLP encoding on its own (asRlpValues/encode with a ready signature) and the whole
+ * signRawTransaction, for collectTip calldata covering tipCount tips.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionSigningBenchmark
+{
+    private static final BigInteger GAS_PRICE = BigInteger.valueOf(2000000000L);
+    private static final BigInteger GAS_LIMIT = BigInteger.valueOf(4300000L);
+
+    @Param({ "1", "10", "500" })
+    public int tipCount;
+
+    private ECKeyPair key;
+    private byte[] callData;
+    private RawTransaction rawTransaction;
+    private Sign.SignatureData signature;
+
+    @Setup
+    public void setup()
+    {
+        key = ECKeyPair.create(Numeric.toBigInt("0x4c0883a69102937d6231471b5dbb6204fe5129617082792ae468d01a3f362318"));
+        callData = TipOfferCodec.encodeCollectTip(BenchmarkData.tipIds(tipCount), BenchmarkData.attestation());
+        rawTransaction = RawTransaction.createTransaction(BigInteger.valueOf(17), GAS_PRICE, GAS_LIMIT,
+                BenchmarkData.CONTRACT, BigInteger.ZERO, Numeric.toHexString(callData));
+        signature = TransactionEncoder.createEip155SignatureData(
+                Sign.signMessage(TransactionEncoder.encode(rawTransaction, BenchmarkData.CHAIN_ID), key), BenchmarkData.CHAIN_ID);
+    }
+
+    @Benchmark
+    public byte[] rlpEncode()
+    {
+        return APIController.encode(rawTransaction, signature);
+    }
+
+    @Benchmark
+    public byte[] signTransaction()
+    {
+        return APIController.signRawTransaction(key, BenchmarkData.CONTRACT, BigInteger.ZERO, GAS_PRICE, GAS_LIMIT,
+                17, callData, BenchmarkData.CHAIN_ID);
+    }
+}
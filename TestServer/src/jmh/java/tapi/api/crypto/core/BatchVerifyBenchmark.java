@@ -0,0 +1,135 @@
+package tapi.api.crypto.core;
+
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static tapi.api.crypto.core.SignatureUtility.ECDSA_DOMAIN;
+
+/**
+ * batchSize personal-message signatures checked one by one with verifyPersonalEthereumSignature and together with
+ * BatchSignatureVerifier: each from its own key (like the subjects' co-signatures), all from one key (like the
+ * attestor's signatures), and with one bad signature that has to be bisected out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchVerifyBenchmark
+{
+    @Param({ "16", "256" })
+    public int batchSize;
+
+    private byte[][] messages;
+    private byte[][] signatures;
+    private byte[][] badSignatures;
+    private ECPublicKeyParameters[] keys;
+    private String[] addresses;
+    private byte[][] sharedKeySignatures;
+    private ECPublicKeyParameters sharedKey;
+    private String sharedAddress;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(42);
+        messages = new byte[batchSize][];
+        signatures = new byte[batchSize][];
+        keys = new ECPublicKeyParameters[batchSize];
+        addresses = new String[batchSize];
+        for (int i = 0; i < batchSize; i++)
+        {
+            BigInteger d = new BigInteger(255, random).add(BigInteger.ONE);
+            keys[i] = new ECPublicKeyParameters(SignatureUtility.multiplyBase(d).normalize(), ECDSA_DOMAIN);
+            addresses[i] = SignatureUtility.addressFromKey(keys[i]);
+            messages[i] = new byte[330];
+            random.nextBytes(messages[i]);
+            signatures[i] = SignatureUtility.signPersonalMsgWithEthereum(messages[i], new ECPrivateKeyParameters(d, ECDSA_DOMAIN));
+        }
+
+        BigInteger shared = new BigInteger(255, random);
+        sharedKey = new ECPublicKeyParameters(SignatureUtility.multiplyBase(shared).normalize(), ECDSA_DOMAIN);
+        sharedAddress = SignatureUtility.addressFromKey(sharedKey);
+        sharedKeySignatures = new byte[batchSize][];
+        for (int i = 0; i < batchSize; i++)
+        {
+            sharedKeySignatures[i] = SignatureUtility.signPersonalMsgWithEthereum(messages[i], new ECPrivateKeyParameters(shared, ECDSA_DOMAIN));
+        }
+
+        badSignatures = signatures.clone();
+        int bad = batchSize / 3;
+        badSignatures[bad] = SignatureUtility.signPersonalMsgWithEthereum(messages[(bad + 1) % batchSize],
+                new ECPrivateKeyParameters(BigInteger.TEN, ECDSA_DOMAIN));
+    }
+
+    @Benchmark
+    public int individual()
+    {
+        int valid = 0;
+        for (int i = 0; i < batchSize; i++)
+        {
+            if (SignatureUtility.verifyPersonalEthereumSignature(messages[i], signatures[i], keys[i])) valid++;
+        }
+        return valid;
+    }
+
+    @Benchmark
+    public boolean[] batch()
+    {
+        return verify(signatures);
+    }
+
+    @Benchmark
+    public boolean[] batchWithOneBad()
+    {
+        return verify(badSignatures);
+    }
+
+    @Benchmark
+    public int individualSharedKey()
+    {
+        int valid = 0;
+        for (int i = 0; i < batchSize; i++)
+        {
+            if (SignatureUtility.verifyPersonalEthereumSignature(messages[i], sharedKeySignatures[i], sharedKey)) valid++;
+        }
+        return valid;
+    }
+
+    @Benchmark
+    public boolean[] batchSharedKey()
+    {
+        BatchSignatureVerifier verifier = new BatchSignatureVerifier();
+        for (int i = 0; i < batchSize; i++)
+        {
+            verifier.addPersonal(messages[i], sharedKeySignatures[i], sharedKey, sharedAddress);
+        }
+        return verifier.verify();
+    }
+
+    private boolean[] verify(byte[][] sigs)
+    {
+        BatchSignatureVerifier verifier = new BatchSignatureVerifier();
+        for (int i = 0; i < batchSize; i++)
+        {
+            verifier.addPersonal(messages[i], sigs[i], keys[i], addresses[i]);
+        }
+        return verifier.verify();
+    }
+}
@@ -0,0 +1,84 @@
+package tapi.api.crypto.core;
+
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static tapi.api.crypto.core.SignatureUtility.ECDSA_DOMAIN;
+
+/**
+ * The secp256k1 primitives under the attestation flow, on a message the size of a SignedIdentifierAttestation DER.
+ * In the package so computeInternalSignature can be measured apart from its encoding.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignatureUtilityBenchmark
+{
+    private static final BigInteger PRIVATE_KEY = Numeric.toBigInt("0x4c0883a69102937d6231471b5dbb6204fe5129617082792ae468d01a3f362318");
+
+    private ECPrivateKeyParameters privateKey;
+    private ECPublicKeyParameters publicKey;
+    private byte[] message;
+    private byte[] signature;
+    private byte[] personalSignature;
+
+    @Setup
+    public void setup()
+    {
+        privateKey = new ECPrivateKeyParameters(PRIVATE_KEY, ECDSA_DOMAIN);
+        publicKey = new ECPublicKeyParameters(new FixedPointCombMultiplier().multiply(ECDSA_DOMAIN.getG(), PRIVATE_KEY), ECDSA_DOMAIN);
+        message = new byte[330];
+        new Random(42).nextBytes(message);
+        signature = SignatureUtility.signWithEthereum(message, privateKey);
+        personalSignature = SignatureUtility.signPersonalMsgWithEthereum(message, privateKey);
+    }
+
+    @Benchmark
+    public byte[] signWithEthereum()
+    {
+        return SignatureUtility.signWithEthereum(message, privateKey);
+    }
+
+    @Benchmark
+    public BigInteger[] computeInternalSignature()
+    {
+        return SignatureUtility.computeInternalSignature(message, privateKey);
+    }
+
+    @Benchmark
+    public ECPublicKeyParameters recoverEthPublicKeyFromSignature()
+    {
+        return SignatureUtility.recoverEthPublicKeyFromSignature(message, signature);
+    }
+
+    @Benchmark
+    public String addressFromKey()
+    {
+        return SignatureUtility.addressFromKey(publicKey);
+    }
+
+    @Benchmark
+    public boolean verifyPersonalEthereumSignature()
+    {
+        return SignatureUtility.verifyPersonalEthereumSignature(message, personalSignature, publicKey);
+    }
+}
@@ -1,34 +1,32 @@
 package tapi.api;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
 import io.reactivex.Observable;
 import io.reactivex.Single;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.schedulers.Schedulers;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
 import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
 import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
 import org.bouncycastle.crypto.util.SubjectPublicKeyInfoFactory;
-import org.bouncycastle.jcajce.provider.digest.Keccak;
 import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.view.RedirectView;
+import org.springframework.web.util.HtmlUtils;
 import org.web3j.abi.*;
 import org.web3j.abi.datatypes.*;
 import org.web3j.abi.datatypes.generated.Uint256;
 import org.web3j.crypto.*;
 import org.web3j.protocol.Web3j;
-import org.web3j.protocol.core.DefaultBlockParameter;
-import org.web3j.protocol.core.DefaultBlockParameterName;
-import org.web3j.protocol.core.methods.request.EthFilter;
 import org.web3j.protocol.core.methods.response.*;
-import org.web3j.protocol.http.HttpService;
 import org.web3j.rlp.RlpEncoder;
 import org.web3j.rlp.RlpList;
 import org.web3j.rlp.RlpString;
@@ -45,25 +43,23 @@ import twitter4j.auth.RequestToken;
 import twitter4j.conf.Configuration;
 import twitter4j.conf.ConfigurationBuilder;
 
+import javax.annotation.PreDestroy;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
-import java.nio.charset.StandardCharsets;
 import java.security.SignatureException;
+import java.sql.SQLException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
-import static org.web3j.protocol.core.methods.request.Transaction.createEthCallTransaction;
-import static org.web3j.tx.Contract.staticExtractEventParameters;
-import static tapi.api.CryptoFunctions.sigFromByteArray;
-
 @Controller
 @RequestMapping("/")
 public class APIController
@@ -92,16 +88,35 @@ public class APIController
     private final String deploymentAddress;
 
     public final static String TWITTER_URL = "https://twitter.com/";
-
-    private final Map<String, CoSignedIdentifierAttestation> attestationMap = new ConcurrentHashMap<>();
-    private final Map<String, Map<BigInteger, Tip>> tipUserMap = new ConcurrentHashMap<>();
-    private final Map<String, TwitterData> twitterIdMap = new ConcurrentHashMap<>();
+    private final static String TIPS_EVENT = "tips:";
+    private final static String TX_EVENT = "tx:";
+
+    private final EthereumNode ethereumNode;
+    private final TipFetcher tipFetcher;
+    private final TipLogReader tipLogReader;
+    private final ERC20Metadata erc20Metadata;
+    private final TipIndexer tipIndexer;
+    private final AttestationStore attestationStore;
+    private final int attestationVerifyMax;
+    private final NonceManager nonceManager;
+    private final ClaimQueue claimQueue;
+    private final long claimRetrySeconds;
+    private final TxWatcher txWatcher;
+    private final PushEvents pushEvents;
+    private final HtmlTemplate getPublicKeyPage;
+    private final HtmlTemplate findingTipsPage;
+    private final HtmlTemplate selectTipPage;
+    private final String noTipsPage;
+    private final TwitterApi twitterApi;
+    private final TwitterUsers twitterUsers;
+    @Nullable
+    private final TipLedger tipLedger;
 
     @Nullable
     private Disposable gasFetchDisposable;
 
     @Autowired
-    public APIController()
+    public APIController(Environment env)
     {
         String keys = load("../../keys.secret");
         String[] sep = keys.split(",");
@@ -120,12 +135,99 @@ public class APIController
             deploymentAddress = "http://192.168.50.9:8081/";
         }
 
+        ethereumNode = new EthereumNode(getNodeUrl(),
+                env.getProperty("ethereum.rpc.maxRequestsPerHost", Integer.class, 16),
+                env.getProperty("ethereum.rpc.maxIdleConnections", Integer.class, 8),
+                env.getProperty("ethereum.rpc.keepAliveSeconds", Long.class, 300L));
+
+        twitterApi = new TwitterApi(TWITTER_BEARER_TOKEN, env.getProperty("twitter.batchWindowMillis", Long.class, 5L),
+                env.getProperty("twitter.rateLimit.maxWaitMillis", Long.class, 2000L),
+                env.getProperty("twitter.rateLimit.backgroundReserve", Double.class, 0.25));
+        //lookups behind the cache go out in batches with any others made at the same time
+        twitterUsers = new TwitterUsers(twitterApi::requestUser,
+                env.getProperty("twitter.cache.size", Integer.class, 10000),
+                env.getProperty("twitter.cache.ttlSeconds", Long.class, 3600L),
+                env.getProperty("twitter.cache.negativeTtlSeconds", Long.class, 60L));
+        twitterUsers.start(env.getProperty("twitter.cache.refreshSeconds", Long.class, 300L));
+        tipFetcher = new TipFetcher(ethereumNode, CONTRACT);
+        erc20Metadata = new ERC20Metadata(ethereumNode);
+        tipLogReader = new TipLogReader(ethereumNode, CONTRACT);
+        nonceManager = new NonceManager(ethereumNode);
+        pushEvents = new PushEvents(env.getProperty("push.timeoutSeconds", Long.class, 120L) * 1000L);
+        txWatcher = new TxWatcher(ethereumNode, hashToBlockNumber, env.getProperty("txwatcher.maxPending", Integer.class, 10000));
+        txWatcher.setMinedListener((hash, blockNumber) -> pushEvents.publish(TX_EVENT + hash, "written"));
+        txWatcher.start(env.getProperty("txwatcher.pollSeconds", Long.class, 3L));
+        claimQueue = new ClaimQueue(env.getProperty("claims.workers", Integer.class, 4),
+                env.getProperty("claims.queueCapacity", Integer.class, 100));
+        claimRetrySeconds = env.getProperty("claims.retrySeconds", Long.class, 10L);
+        LogBackfill backfill = new LogBackfill(ethereumNode,
+                env.getProperty("tipindex.backfillConcurrency", Integer.class, 4),
+                env.getProperty("tipindex.initialWindow", Long.class, 10000L),
+                env.getProperty("tipindex.minWindow", Long.class, 1L),
+                env.getProperty("tipindex.maxWindow", Long.class, 500000L));
+        tipIndexer = new TipIndexer(ethereumNode, backfill, tipFetcher, CONTRACT,
+                new File(env.getProperty("tipindex.checkpointFile", baseFilePath + "tipIndex.dat")),
+                env.getProperty("tipindex.startBlock", Long.class, 0L),
+                env.getProperty("tipindex.pollSeconds", Long.class, 15L),
+                env.getProperty("tipindex.confirmations", Long.class, 3L),
+                env.getProperty("tipindex.reorgHistory", Integer.class, 64));
+        tipLedger = openTipLedger(new File(env.getProperty("tipledger.file", baseFilePath + "tipLedger.db")));
+        if (tipLedger != null) tipIndexer.setLedger(tipLedger);
+        if (env.getProperty("tipindex.streaming", Boolean.class, true))
+        {
+            tipIndexer.enableStreaming(env.getProperty("ethereum.ws.enabled", Boolean.class, true) ? getWebSocketUrl() : null,
+                    env.getProperty("tipindex.streamRetrySeconds", Long.class, 30L));
+        }
+        tipIndexer.start();
+
         AttestationHandler.setupKeys(ATTESTATION_KEY);
+        try
+        {
+            attestationStore = new AttestationStore(
+                    new File(env.getProperty("attestation.store.file", baseFilePath + "attestations")),
+                    env.getProperty("attestation.store.cacheSize", Integer.class, 10000));
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Unable to open attestation store", e);
+        }
+        attestationStore.start(env.getProperty("attestation.store.flushSeconds", Long.class, 5L));
+        attestationVerifyMax = env.getProperty("attestation.verify.maxBatch", Integer.class, 1000);
+
+        //hand-rendered pages are parsed once
+        try
+        {
+            getPublicKeyPage = HtmlTemplate.load("templates/getPublicKey.html");
+            findingTipsPage = HtmlTemplate.load("templates/findingTips.html");
+            selectTipPage = HtmlTemplate.load("templates/selectTip.html");
+            noTipsPage = HtmlTemplate.load("templates/noTips.html").render();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Unable to load page templates", e);
+        }
+
         //start gas price cycle
         gasFetchDisposable = Observable.interval(0, 30, TimeUnit.SECONDS)
                 .doOnNext(l -> getGasPriceGWEI()).subscribe();
     }
 
+    @PreDestroy
+    public void shutdown()
+    {
+        if (gasFetchDisposable != null && !gasFetchDisposable.isDisposed())
+        {
+            gasFetchDisposable.dispose();
+        }
+        claimQueue.shutdown();
+        twitterUsers.stop();
+        txWatcher.stop();
+        tipIndexer.stop();
+        attestationStore.close();
+        if (tipLedger != null) tipLedger.close();
+        ethereumNode.shutdown();
+    }
+
     /***********************************
      * Create Tips
      ***********************************/
@@ -171,9 +273,18 @@ public class APIController
         try {
             if (WalletUtils.isValidAddress(erc20Addr))
             {
-                erc20Val = new BigDecimal(erc20Amount).multiply(WEI_FACTOR); //TODO: Grab decimal value of erc20 and validate
+                ERC20Metadata.TokenInfo token = erc20Metadata.getToken(erc20Addr);
+                erc20Val = token != null ? new BigDecimal(token.toUnits(new BigDecimal(erc20Amount)))
+                        : new BigDecimal(erc20Amount).multiply(WEI_FACTOR); //couldn't read the token, assume 18 decimals
             }
         }
+        catch (ArithmeticException e)
+        {
+            //amount can't be paid in the token's units
+            model.addAttribute("userinput", userName);
+            model.addAttribute("erc20precision", "error");
+            return "create_tip";
+        }
         catch (Exception e)
         {
             //
@@ -188,7 +299,6 @@ public class APIController
 
         //create transaction
         byte[] txBytes;
-        String encodedFunction;
         String twitterId = data.getIdentifier();
         List<PaymentToken> pTokens = new ArrayList<>();
         if (erc20Val.compareTo(BigDecimal.ZERO) > 0)
@@ -196,8 +306,7 @@ public class APIController
             pTokens.add(new PaymentToken(new Address(erc20Addr), new Uint256(erc20Val.toBigInteger()), new DynamicBytes(Numeric.hexStringToByteArray("0x00"))));
         }
 
-        encodedFunction = tipBytes(pTokens, twitterId);
-        txBytes = Numeric.hexStringToByteArray(Numeric.cleanHexPrefix(encodedFunction));
+        txBytes = TipOfferCodec.encodeCreateTip(pTokens, twitterId);
 
         model.addAttribute("profilepic", data.profile_image_url);
         model.addAttribute("username", data.username);
@@ -218,9 +327,7 @@ public class APIController
 
             //need to call approve first
             //get approve ERC20 tx
-            Function approve = approve(CONTRACT, erc20Val.toBigInteger());
-            encodedFunction = FunctionEncoder.encode(approve);
-            txBytes = Numeric.hexStringToByteArray(Numeric.cleanHexPrefix(encodedFunction));
+            txBytes = TipOfferCodec.encodeApprove(CONTRACT, erc20Val.toBigInteger());
             model.addAttribute("approve_tx", "'" + Numeric.toHexString(txBytes) + "'");
         }
         else
@@ -250,31 +357,39 @@ public class APIController
 
         model.addAttribute("result_hash", "'" + resultHash + "'");
         model.addAttribute("collection_url", "'" + deploymentAddress + "claim" + "'");
+        model.addAttribute("events_url", "'" + deploymentAddress + "events/tx/" + "'");
         model.addAttribute("check_url", "'" + deploymentAddress + "checkTx/" + "'");
 
         return "tipCreated";
     }
 
     //Pure API Route to support 'waitForTip' above (used in the <script> in waitForTip). See if transaction has been written
+    //Answered from the TxWatcher, which checks all the hashes pages are waiting on once per block
     @RequestMapping(value = "checkTx/{hash}", method = { RequestMethod.GET, RequestMethod.POST })
     public ResponseEntity checkTx(@PathVariable("hash") String hash,
                                         HttpServletRequest request) throws InterruptedException, ExecutionException, IOException {
-        final Web3j web3j = getWeb3j();
+        if (!TxWatcher.isTxHash(hash)) return new ResponseEntity<>("invalid hash", HttpStatus.BAD_REQUEST);
 
-        System.out.println("Check for Tx: " + hash);
-        try {
-            EthTransaction etx = web3j.ethGetTransactionByHash(hash).send();
-            if (etx != null && etx.getResult().getBlockNumberRaw() != null && !etx.getResult().getBlockNumberRaw().equals("null")) {
-                System.out.println("Tx written: " + etx.getResult().getHash());
-                return new ResponseEntity<>("written", HttpStatus.CREATED);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+        BigInteger blockNumber = txWatcher.getBlockNumber(hash);
+        if (blockNumber != null) {
+            System.out.println("Tx written: " + hash + " in block " + blockNumber);
+            return new ResponseEntity<>("written", HttpStatus.CREATED);
         }
 
         return new ResponseEntity<>("waiting", HttpStatus.CREATED);
     }
 
+    // Server-Sent Events version of checkTx: one "written" event once the transaction is mined
+    @GetMapping(value = "/events/tx/{hash}")
+    public ResponseEntity<SseEmitter> txEvents(@PathVariable("hash") String hash)
+    {
+        if (!TxWatcher.isTxHash(hash)) return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+
+        SseEmitter emitter = pushEvents.subscribe(TX_EVENT + hash.toLowerCase());
+        if (txWatcher.getBlockNumber(hash) != null) pushEvents.send(emitter, "written");
+        return new ResponseEntity<>(emitter, HttpStatus.OK);
+    }
+
     /***********************************
      * Claim Tips
      ***********************************/
@@ -348,20 +463,17 @@ public class APIController
 
             //store the user name so we can display it on the web page
             TwitterData data = lookupTwitterName(twitter.getScreenName());
-            if (attestationMap.containsKey(data.id)) {
+            if (attestationStore.hasAttestation(data.id)) {
                 return showTipList(data.getIdentifier(), data.id);
             } else {
-                String initHTML = loadFile("templates/getPublicKey.html");
-
                 //store the user name so we can display it on the web page
                 String imageBlock = "<img src=\"" + data.profile_image_url + "\" alt=\"" + data.username + "\" />\n" +
                         "<h5>" + data.username + "</h5>";
 
-                initHTML = initHTML.replace("[IMAGE_BLOCK]", imageBlock);
-                initHTML = initHTML.replace("[USERNAME]", data.username);
-                initHTML = initHTML.replace("[IDENTIFIER]", data.id);
-
-                return initHTML;
+                return getPublicKeyPage.render(
+                        "IMAGE_BLOCK", imageBlock,
+                        "USERNAME", data.username,
+                        "IDENTIFIER", data.id);
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -383,34 +495,15 @@ public class APIController
                                       @PathVariable("signature") String signature,
                                       @PathVariable("message") String message,
                                       @PathVariable("username") String username,
+                                      HttpServletResponse response,
                                       Model model) throws IOException {
 
-        byte[] encodedMessage = message.getBytes();
-        byte[] compatibilityEncodedMessage = Numeric.hexStringToByteArray(message); //compatibility with MetaMask.
         byte[] sigBytes = Numeric.hexStringToByteArray(signature);
-        Sign.SignatureData sd = sigFromByteArray(sigBytes);
 
-        String addressRecovered = "";
         try
         {
-            BigInteger publicKey = Sign.signedPrefixedMessageToKey(encodedMessage, sd); // <-- recover sign personal message
-            addressRecovered = "0x" + Keys.getAddress(publicKey);
-            System.out.println("Recovered: " + addressRecovered);
-
-            //now create PublicKey for attestation
-            //////////////////// Using Attestation.id endpoint
-            AsymmetricKeyParameter subjectPublicKey = SignatureUtility.recoverEthPublicKeyFromPersonalSignature(encodedMessage, sigBytes);
-
-            //Check if we need MM compatibility mode
-            if (!addressRecovered.equalsIgnoreCase(address))
-            {
-                //use compatibilityEncodedMessage
-                publicKey = Sign.signedPrefixedMessageToKey(compatibilityEncodedMessage, sd); // <-- recover sign personal message
-                addressRecovered = "0x" + Keys.getAddress(publicKey);
-                System.out.println("Recovered: " + addressRecovered);
-                //////////////////// Using Attestation.id endpoint
-                subjectPublicKey = SignatureUtility.recoverEthPublicKeyFromPersonalSignature(compatibilityEncodedMessage, sigBytes);
-            }
+            AsymmetricKeyParameter subjectPublicKey = recoverSubjectKey(address, message, sigBytes);
+            System.out.println("Recovered: " + SignatureUtility.addressFromKey(subjectPublicKey));
 
             //Generate the CosignedIdentifierAttestation
             SignedIdentifierAttestation att = AttestationHandler.createPublicAttestation(subjectPublicKey, id, TWITTER_URL + username);
@@ -425,7 +518,10 @@ public class APIController
         }
         catch (SignatureException e)
         {
+            //no key to attest, so there's nothing to ask the user to sign
             e.printStackTrace();
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Signature doesn't match the address");
+            return null;
         }
 
         return "askForAttestationSignature";
@@ -442,33 +538,56 @@ public class APIController
                                      @PathVariable("id") String id,
                                      Model model) throws IOException, SignatureException
     {
-        byte[] signedAttestationBytes = Numeric.hexStringToByteArray(signedAttestation);
-        byte[] signatureBytes = Numeric.hexStringToByteArray(signature);
-        //////////////////// Using Attestation.id endpoint (although you should already have this from step 3, it's the same object).
-        AsymmetricKeyParameter subjectPublicKey = SignatureUtility.restoreKeyFromSPKI(Numeric.hexStringToByteArray(publickey));
-        //////////////////// Using Attestation.id endpoint
-        SignedIdentifierAttestation signedIdentifier = AttestationHandler.restoreSignedAttestation(signedAttestationBytes);
-
-        CoSignedIdentifierAttestation coSigned = new CoSignedIdentifierAttestation(signedIdentifier, subjectPublicKey, signatureBytes);
+        CoSignedIdentifierAttestation coSigned = coSignAttestation(Numeric.hexStringToByteArray(signedAttestation),
+                Numeric.hexStringToByteArray(publickey), Numeric.hexStringToByteArray(signature));
+        SignedIdentifierAttestation signedIdentifier = coSigned.getUnsignedAttestation();
 
         System.out.println("DER: " + Numeric.toHexString(coSigned.getDerEncoding()));
 
         //cache new attestation
-        attestationMap.put(id, coSigned);
+        attestationStore.putAttestation(id, coSigned);
 
         String identifier = signedIdentifier.getUnsignedAttestation().getSubject();
 
         return showTipList(identifier, id);
     }
 
-    // Display the 'looking for tips' screen
-    private String waitForTipResults(String id) {
-        String initHTML = loadFile("templates/findingTips.html");
+    /**
+     * Key of the wallet that signed the personal message. MetaMask signs the hex of the message rather than the
+     * message text, so both encodings are tried against the one signature.
+     */
+    static AsymmetricKeyParameter recoverSubjectKey(String address, String message, byte[] sigBytes) throws SignatureException
+    {
+        byte[] encodedMessage = message.getBytes();
+        byte[] compatibilityEncodedMessage = Numeric.hexStringToByteArray(message); //compatibility with MetaMask.
+
+        //////////////////// Using Attestation.id endpoint
+        AsymmetricKeyParameter subjectPublicKey = SignatureUtility.recoverEthPublicKeyFromPersonalSignature(sigBytes, address,
+                encodedMessage, compatibilityEncodedMessage);
+        if (subjectPublicKey == null) throw new SignatureException("Message was not signed by " + address);
+        return subjectPublicKey;
+    }
+
+    /**
+     * Restore the SignedIdentifierAttestation the user signed (checking the attestor's signature), then bind the user's
+     * signature over it (checking that too)
+     */
+    static CoSignedIdentifierAttestation coSignAttestation(byte[] signedAttestationBytes, byte[] publicKeySpki, byte[] signatureBytes) throws IOException
+    {
+        //////////////////// Using Attestation.id endpoint (although you should already have this from step 3, it's the same object).
+        AsymmetricKeyParameter subjectPublicKey = SignatureUtility.restoreKeyFromSPKI(publicKeySpki);
+        //////////////////// Using Attestation.id endpoint
+        SignedIdentifierAttestation signedIdentifier = AttestationHandler.restoreSignedAttestation(signedAttestationBytes);
 
-        initHTML = initHTML.replace("[CHECK_URL]", deploymentAddress + "getTipResults/" + id);
-        initHTML = initHTML.replace("[USER_ID]", id);
+        return new CoSignedIdentifierAttestation(signedIdentifier, subjectPublicKey, signatureBytes);
+    }
 
-        return initHTML;
+    // Display the 'looking for tips' screen
+    private String waitForTipResults(String id) {
+        return findingTipsPage.render(
+                "CHECK_URL", deploymentAddress + "getTipResults/" + id,
+                "EVENTS_URL", deploymentAddress + "events/tips/" + id,
+                "USER_ID", id);
     }
 
     // Get a list of active tips and store them in the mapping
@@ -481,7 +600,8 @@ public class APIController
 
             Map<BigInteger, Tip> tips = getTipListForUser(identifier);
 
-            tipUserMap.put(id, tips);
+            attestationStore.putTips(id, tips);
+            pushEvents.publish(TIPS_EVENT + id, "pass");
             return true;
         }).subscribeOn(Schedulers.io())
           .observeOn(Schedulers.io())
@@ -496,7 +616,7 @@ public class APIController
     public ResponseEntity getTipResults(@PathVariable("id") String id,
                                         HttpServletRequest request) throws InterruptedException, ExecutionException, IOException
     {
-        Map<BigInteger, Tip> tips = tipUserMap.get(id);
+        Map<BigInteger, Tip> tips = attestationStore.getTips(id);
 
         if (tips == null)
         {
@@ -508,12 +628,21 @@ public class APIController
         }
     }
 
+    // Server-Sent Events version of getTipResults: one "pass" event once the user's tips are found
+    @GetMapping(value = "/events/tips/{id}")
+    public SseEmitter tipResultEvents(@PathVariable("id") String id)
+    {
+        SseEmitter emitter = pushEvents.subscribe(TIPS_EVENT + id);
+        if (attestationStore.getTips(id) != null) pushEvents.send(emitter, "pass");
+        return emitter;
+    }
+
     //6. Display user's tips and show 'collect tips' button
     @GetMapping(value = "/checkTipResults/{id}")
     public @ResponseBody String checkTipResults(@PathVariable("id") String id,
                                                 Model model) throws IOException, SignatureException
     {
-        Map<BigInteger, Tip> tips = tipUserMap.get(id);
+        Map<BigInteger, Tip> tips = attestationStore.getTips(id);
 
         if (tips == null)
         {
@@ -521,14 +650,21 @@ public class APIController
         }
         else if (tips.size() == 0)
         {
-            return loadFile("templates/noTips.html");
+            return noTipsPage;
         }
         else
         {
             //show results
-            String initHTML = loadFile("templates/selectTip.html");
             final BigDecimal weiFactor = BigDecimal.TEN.pow(18);
 
+            //metadata for all the tokens on the page in one go
+            List<String> tokenAddresses = new ArrayList<>();
+            for (Tip tip : tips.values())
+            {
+                if (tip.paymentTokens != null && tip.paymentTokens.length > 0) tokenAddresses.add(tip.paymentTokens[0].address.toString());
+            }
+            Map<String, ERC20Metadata.TokenInfo> tokenInfo = erc20Metadata.getTokens(tokenAddresses);
+
             StringBuilder tokenList = new StringBuilder();
 
             for (BigInteger tipId : tips.keySet()) {
@@ -541,18 +677,20 @@ public class APIController
                 }
                 if (tip.paymentTokens != null && tip.paymentTokens.length > 0)
                 {
-                    BigDecimal tokenOffer = (new BigDecimal(tip.paymentTokens[0].value.getValue())).divide(weiFactor); //TODO: Might not always be 18
+                    ERC20Metadata.TokenInfo token = tokenInfo.get(tip.paymentTokens[0].address.toString().toLowerCase(Locale.ROOT));
+                    BigInteger tokenUnits = tip.paymentTokens[0].value.getValue();
+                    BigDecimal tokenOffer = token != null ? token.fromUnits(tokenUnits) : (new BigDecimal(tokenUnits)).divide(weiFactor);
                     if (tokenOffer.compareTo(BigDecimal.ZERO) > 0)
                     {
-                        tokenList.append("Tip ERC20 Token: ").append("<b>").append(tip.paymentTokens[0].address).append("</b><br/>Amount:<b>").append(tokenOffer.toString()).append("</b><br/>");
+                        String tokenName = token != null && !token.symbol.isEmpty() ? HtmlUtils.htmlEscape(token.symbol) + " (" + tip.paymentTokens[0].address + ")" : tip.paymentTokens[0].address.toString();
+                        tokenList.append("Tip ERC20 Token: ").append("<b>").append(tokenName).append("</b><br/>Amount:<b>").append(tokenOffer.toPlainString()).append("</b><br/>");
                     }
                 }
             }
 
-            initHTML = initHTML.replace("[TIP_LIST]", tokenList.toString());
-            initHTML = initHTML.replace("[USER_ID]", id);
-
-            return initHTML;
+            return selectTipPage.render(
+                    "TIP_LIST", tokenList.toString(),
+                    "USER_ID", id);
         }
     }
 
@@ -560,11 +698,12 @@ public class APIController
     //   Note, this screen polls the Ethereum node using 'checkTx' to see if transaction has been written. Once written it updates the page
     @GetMapping(value = "/collectTip/{id}")
     public String claim(@PathVariable("id") String id,
+                             HttpServletResponse response,
                              Model model) {
 
         //pull tip and attestation
-        CoSignedIdentifierAttestation att = attestationMap.get(id);
-        Map<BigInteger, Tip> tips = tipUserMap.get(id);
+        CoSignedIdentifierAttestation att = attestationStore.getAttestation(id);
+        Map<BigInteger, Tip> tips = attestationStore.getTips(id);
 
         if (tips == null) { return "tipClaimed"; }
 
@@ -577,61 +716,160 @@ public class APIController
         }
 
         //form claim transaction for user to call
-        Function claim = collectTip(tipList, att);
-        tipUserMap.remove(id);
+        byte[] functionCode = TipOfferCodec.encodeCollectTip(tipList, att.getDerEncoding());
 
-        String encodedFunction = FunctionEncoder.encode(claim);
-        byte[] functionCode = Numeric.hexStringToByteArray(Numeric.cleanHexPrefix(encodedFunction));
-
-        //now call the collectTip
+        //now queue the collectTip; the page polls claimStatus for the transaction hash
         final BigInteger useGasPrice = currentGasPrice.multiply(GWEI_FACTOR).toBigInteger();
 
-        String txHashStr = createTransaction(getAdminKeyPair(), CONTRACT, BigInteger.ZERO, useGasPrice, GAS_LIMIT_CONTRACT, functionCode, CHAIN_ID)
-                .blockingGet();
+        attestationStore.removeTips(id);
+        ClaimQueue.ClaimTicket ticket = claimQueue.submit(
+                () -> createTransaction(getAdminKeyPair(), CONTRACT, BigInteger.ZERO, useGasPrice, GAS_LIMIT_CONTRACT, functionCode, CHAIN_ID)
+                        .blockingGet(),
+                () -> attestationStore.putTips(id, tips)); //let the user try again
+
+        if (ticket == null)
+        {
+            //queue is full; nothing was claimed, so the page just reloads after a pause
+            attestationStore.putTips(id, tips);
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader("Retry-After", String.valueOf(claimRetrySeconds));
+            model.addAttribute("retry_seconds", claimRetrySeconds);
+            return "claimBusy";
+        }
 
-        model.addAttribute("result_hash", "'" + txHashStr + "'");
+        model.addAttribute("claim_ticket", "'" + ticket.ticket + "'");
+        model.addAttribute("claim_status_url", "'" + deploymentAddress + "claimStatus/" + "'");
+        model.addAttribute("events_url", "'" + deploymentAddress + "events/tx/" + "'");
         model.addAttribute("check_url", "'" + deploymentAddress + "checkTx/" + "'");
         return "tipClaimed";
     }
 
+    // Pure API route polled by the 'tipClaimed' page until the claim transaction has been sent
+    @GetMapping(value = "/claimStatus/{ticket}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> claimStatus(@PathVariable("ticket") String ticket)
+    {
+        ClaimQueue.ClaimTicket claimTicket = claimQueue.getTicket(ticket);
+        if (claimTicket == null)
+        {
+            return new ResponseEntity<>("{\"error\":\"unknown ticket\"}", HttpStatus.NOT_FOUND);
+        }
 
+        return new ResponseEntity<>(new Gson().toJson(claimTicket), HttpStatus.OK);
+    }
 
+    // Bulk check of CoSignedIdentifierAttestations: POST a JSON array of 0x DER hex strings, get back
+    // [{"valid":true,"address":"0x..","identifier":"<attestation subject>"}, ..] in the same order
+    @PostMapping(value = "/attestations/verify", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> verifyAttestations(@RequestBody String body)
+    {
+        String[] hexAttestations;
+        try
+        {
+            hexAttestations = new Gson().fromJson(body, String[].class);
+        }
+        catch (JsonSyntaxException e)
+        {
+            hexAttestations = null;
+        }
+
+        if (hexAttestations == null) return new ResponseEntity<>("{\"error\":\"expected a JSON array of attestations\"}", HttpStatus.BAD_REQUEST);
+        if (hexAttestations.length > attestationVerifyMax)
+        {
+            return new ResponseEntity<>("{\"error\":\"at most " + attestationVerifyMax + " attestations per request\"}", HttpStatus.BAD_REQUEST);
+        }
+
+        List<byte[]> attestations = new ArrayList<>(hexAttestations.length);
+        for (String hex : hexAttestations)
+        {
+            attestations.add(hex != null ? Numeric.hexStringToByteArray(hex) : new byte[0]);
+        }
+
+        return new ResponseEntity<>(new Gson().toJson(AttestationHandler.verifyCoSignedAttestations(attestations)), HttpStatus.OK);
+    }
 
     /***********************************
-     * Twitter API routes
+     * Tip ledger queries (JSON). Answered from the local ledger, no node calls
      ***********************************/
 
-    private TwitterData lookupTwitterName(String twitterName)
+    private static final int LEDGER_PAGE_MAX = 500;
+
+    // Tips for a Twitter user. ?open=true for uncollected tips only
+    @GetMapping(value = "/tips/recipient/{username}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> getRecipientTips(@PathVariable("username") String username,
+                                                   @RequestParam(value = "open", defaultValue = "false") boolean openOnly,
+                                                   @RequestParam(value = "after", defaultValue = "-1") long after,
+                                                   @RequestParam(value = "limit", defaultValue = "50") int limit)
+    {
+        TwitterData data = lookupTwitterName(username);
+        if (data == null) return new ResponseEntity<>("{\"error\":\"unknown user\"}", HttpStatus.NOT_FOUND);
+
+        String idHash = TipIndexer.identifierHash(data.getIdentifier());
+        return ledgerResponse(() -> tipLedger.getTipsForRecipient(idHash, openOnly, after, pageLimit(limit)));
+    }
+
+    // Tips sent from an address
+    @GetMapping(value = "/tips/offerer/{address}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> getOffererTips(@PathVariable("address") String address,
+                                                 @RequestParam(value = "after", defaultValue = "-1") long after,
+                                                 @RequestParam(value = "limit", defaultValue = "50") int limit)
+    {
+        if (!WalletUtils.isValidAddress(address)) return new ResponseEntity<>("{\"error\":\"invalid address\"}", HttpStatus.BAD_REQUEST);
+        return ledgerResponse(() -> tipLedger.getTipsFromOfferer(address, after, pageLimit(limit)));
+    }
+
+    @GetMapping(value = "/tips/open", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> getOpenTips(@RequestParam(value = "after", defaultValue = "-1") long after,
+                                              @RequestParam(value = "limit", defaultValue = "50") int limit)
     {
-        OkHttpClient client = buildClient();
-        String urlCall = "https://api.twitter.com/2/users/by/username/[USERNAME]?user.fields=profile_image_url".replace("[USERNAME]", twitterName);
+        return ledgerResponse(() -> tipLedger.getOpenTips(after, pageLimit(limit)));
+    }
+
+    private interface LedgerQuery
+    {
+        List<TipLedger.LedgerTip> run() throws SQLException;
+    }
 
+    private ResponseEntity<String> ledgerResponse(LedgerQuery query)
+    {
+        if (tipLedger == null) return new ResponseEntity<>("{\"error\":\"ledger unavailable\"}", HttpStatus.SERVICE_UNAVAILABLE);
         try
         {
-            Request request = new Request.Builder()
-                    .url(urlCall)
-                    .method("GET", null)
-                    .addHeader("Content-Type", "application/x-www-form-urlencoded")
-                    .addHeader("Authorization", "Bearer " + TWITTER_BEARER_TOKEN)
-                    .build();
-
-            okhttp3.Response response = client.newCall(request).execute();
-            //get result
-            String result = response.body() != null ? response.body().string() : "";
-
-            Encapsulate data = new Gson().fromJson(result, Encapsulate.class);
-            if (data != null && data.data != null)
-            {
-                twitterIdMap.put(data.data.id, data.data);
-                return data.data;
-            }
+            return new ResponseEntity<>(new Gson().toJson(query.run()), HttpStatus.OK);
         }
-        catch (Exception e)
+        catch (SQLException e)
         {
-            //
+            e.printStackTrace();
+            return new ResponseEntity<>("{\"error\":\"ledger query failed\"}", HttpStatus.INTERNAL_SERVER_ERROR);
         }
+    }
+
+    private static int pageLimit(int limit)
+    {
+        return Math.max(1, Math.min(LEDGER_PAGE_MAX, limit));
+    }
 
-        return null;
+    @Nullable
+    private static TipLedger openTipLedger(File ledgerFile)
+    {
+        try
+        {
+            return new TipLedger(ledgerFile);
+        }
+        catch (SQLException e)
+        {
+            //carry on without the ledger; the tip index doesn't need it
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /***********************************
+     * Twitter API routes
+     ***********************************/
+
+    private TwitterData lookupTwitterName(String twitterName)
+    {
+        return twitterUsers.lookup(twitterName);
     }
 
     // Get OAuth config for using Twitter sign-in
@@ -662,38 +900,51 @@ public class APIController
     public Single<String> createTransaction(ECKeyPair key, String toAddress, BigInteger value,
                                             BigInteger gasPrice, BigInteger gasLimit, byte[] data, long chainId)
     {
-        final Web3j web3j = getWeb3j();
-
-        return getLastTransactionNonce(web3j, "0x" + Keys.getAddress(key.getPublicKey()))
-                .flatMap(nonce -> signTransaction(key, toAddress, value, gasPrice, gasLimit, nonce.longValue(), data, chainId))
-                .map(signedTransactionBytes -> {
-                    EthSendTransaction raw = web3j
-                            .ethSendRawTransaction(Numeric.toHexString(signedTransactionBytes))
-                            .send();
-
-                    if (raw.hasError())
-                    {
-                        throw new Exception(raw.getError().getMessage());
-                    }
-                    return raw.getTransactionHash();
+        final String fromAddress = "0x" + Keys.getAddress(key.getPublicKey());
+
+        //if the nonce was used elsewhere, pick up the node's count and try once more
+        return sendWithNextNonce(key, fromAddress, toAddress, value, gasPrice, gasLimit, data, chainId)
+                .onErrorResumeNext(error -> {
+                    if (!NonceManager.isNonceUsedError(error.getMessage())) return Single.error(error);
+                    nonceManager.resync(fromAddress);
+                    return sendWithNextNonce(key, fromAddress, toAddress, value, gasPrice, gasLimit, data, chainId);
                 });
     }
 
-    public Single<BigInteger> getLastTransactionNonce(Web3j web3j, String walletAddress)
+    // Nonces come from the NonceManager rather than eth_getTransactionCount, so concurrent sends from one key don't collide
+    private Single<String> sendWithNextNonce(ECKeyPair key, String fromAddress, String toAddress, BigInteger value,
+                                             BigInteger gasPrice, BigInteger gasLimit, byte[] data, long chainId)
     {
-        return Single.fromCallable(() -> {
-            try
-            {
-                EthGetTransactionCount ethGetTransactionCount = web3j
-                        .ethGetTransactionCount(walletAddress, DefaultBlockParameterName.PENDING)
-                        .send();
-                return ethGetTransactionCount.getTransactionCount();
-            }
-            catch (Exception e)
-            {
-                return BigInteger.ZERO;
-            }
-        });
+        final Web3j web3j = getWeb3j();
+
+        return Single.fromCallable(() -> nonceManager.allocate(fromAddress))
+                .flatMap(nonce -> signTransaction(key, toAddress, value, gasPrice, gasLimit, nonce, data, chainId)
+                        //not signed: the nonce is still free
+                        .doOnError(e -> nonceManager.release(fromAddress, nonce))
+                        .map(signedTransactionBytes -> {
+                            try
+                            {
+                                return web3j.ethSendRawTransaction(Numeric.toHexString(signedTransactionBytes)).send();
+                            }
+                            catch (Exception e)
+                            {
+                                //the node may have taken it before the connection failed; let its pending count decide
+                                nonceManager.unknown(fromAddress, nonce);
+                                throw e;
+                            }
+                        })
+                        .map(raw -> {
+                            if (raw.hasError())
+                            {
+                                //a used nonce mustn't be handed out again; anything else means it's still free
+                                if (NonceManager.isNonceUsedError(raw.getError().getMessage())) nonceManager.sent(fromAddress, nonce);
+                                else nonceManager.release(fromAddress, nonce);
+                                throw new Exception(raw.getError().getMessage());
+                            }
+
+                            nonceManager.sent(fromAddress, nonce);
+                            return raw.getTransactionHash();
+                        }));
     }
 
     private BigDecimal getGasPriceGWEI()
@@ -735,17 +986,12 @@ public class APIController
         return addr;
     }
 
-    private OkHttpClient buildClient()
+    private Web3j getWeb3j()
     {
-        return new OkHttpClient.Builder()
-                .connectTimeout(15, TimeUnit.SECONDS)
-                .readTimeout(15, TimeUnit.SECONDS)
-                .writeTimeout(15, TimeUnit.SECONDS)
-                .retryOnConnectionFailure(true)
-                .build();
+        return ethereumNode.getWeb3j();
     }
 
-    private Web3j getWeb3j()
+    private String getNodeUrl()
     {
         //Infura
         String chain = "";
@@ -761,48 +1007,15 @@ public class APIController
                 break;
         }
 
-        HttpService nodeService = new HttpService("https://" + chain + "infura.io/v3/" + INFURA_KEY,  buildClient(), false);
-        return Web3j.build(nodeService);
+        return "https://" + chain + "infura.io/v3/" + INFURA_KEY;
     }
 
-    private List callSmartContractFunctionArray(
-            org.web3j.abi.datatypes.Function function, String contractAddress, String address) throws Exception
+    private String getWebSocketUrl()
     {
-        String value = callSmartContractFunction(getWeb3j(), function, contractAddress, address);
-
-        List<Type> values = FunctionReturnDecoder.decode(value, function.getOutputParameters());
-        if (values.isEmpty()) return null;
-
-        Type T = values.get(0);
-        Object o = T.getValue();
-        return (List) o;
+        return getNodeUrl().replace("https://", "wss://").replace("/v3/", "/ws/v3/");
     }
 
-    private String callSmartContractFunction(Web3j web3j,
-                                             Function function, String contractAddress, String fromAddress)
-    {
-        String encodedFunction = FunctionEncoder.encode(function);
-
-        try
-        {
-            org.web3j.protocol.core.methods.request.Transaction transaction
-                    = createEthCallTransaction(fromAddress, contractAddress, encodedFunction);
-            EthCall response = web3j.ethCall(transaction, DefaultBlockParameterName.LATEST).send();
-
-            return response.getValue();
-        }
-        catch (IOException e)
-        {
-            return null;
-        }
-        catch (Exception e)
-        {
-            e.printStackTrace();
-            return null;
-        }
-    }
-
-    private static byte[] encode(RawTransaction rawTransaction, Sign.SignatureData signatureData) {
+    static byte[] encode(RawTransaction rawTransaction, Sign.SignatureData signatureData) {
         List<RlpType> values = asRlpValues(rawTransaction, signatureData);
         RlpList rlpList = new RlpList(values);
         return RlpEncoder.encode(rlpList);
@@ -852,24 +1065,30 @@ public class APIController
     private Single<byte[]> signTransaction(ECKeyPair key, String toAddress, BigInteger value,
                                            BigInteger gasPrice, BigInteger gasLimit, long nonce, byte[] data,
                                            long chainId) {
-        return Single.fromCallable(() -> {
-            Sign.SignatureData sigData;
-            String dataStr = data != null ? Numeric.toHexString(data) : "";
-
-            RawTransaction rtx = RawTransaction.createTransaction(
-                    BigInteger.valueOf(nonce),
-                    gasPrice,
-                    gasLimit,
-                    toAddress,
-                    value,
-                    dataStr
-            );
-
-            byte[] signData = TransactionEncoder.encode(rtx, chainId);
-            sigData = Sign.signMessage(signData, key);
-            sigData = TransactionEncoder.createEip155SignatureData(sigData, chainId);
-            return encode(rtx, sigData);
-        }).subscribeOn(Schedulers.io());
+        return Single.fromCallable(() -> signRawTransaction(key, toAddress, value, gasPrice, gasLimit, nonce, data, chainId))
+                .subscribeOn(Schedulers.io());
+    }
+
+    // EIP-155 signed, RLP encoded transaction ready for eth_sendRawTransaction
+    static byte[] signRawTransaction(ECKeyPair key, String toAddress, BigInteger value,
+                                     BigInteger gasPrice, BigInteger gasLimit, long nonce, byte[] data,
+                                     long chainId) {
+        Sign.SignatureData sigData;
+        String dataStr = data != null ? Numeric.toHexString(data) : "";
+
+        RawTransaction rtx = RawTransaction.createTransaction(
+                BigInteger.valueOf(nonce),
+                gasPrice,
+                gasLimit,
+                toAddress,
+                value,
+                dataStr
+        );
+
+        byte[] signData = TransactionEncoder.encode(rtx, chainId);
+        sigData = Sign.signMessage(signData, key);
+        sigData = TransactionEncoder.createEip155SignatureData(sigData, chainId);
+        return encode(rtx, sigData);
     }
 
 
@@ -880,214 +1099,81 @@ public class APIController
 
     private Map<BigInteger, Tip> getTipListForUser(String identifier)
     {
-        Map<BigInteger, Tip> tips = new HashMap<>();
-        final Web3j web3j = getWeb3j();
-        final Event event = getTipCreateEvent(); //search for 'CreateTip' events
+        if (tipIndexer.isReady())
+        {
+            return getIndexedTipListForUser(identifier);
+        }
+
+        //index is still catching up, scan the logs directly
         List<BigInteger> receivedTipIds = new ArrayList<>();
+        Map<BigInteger, String> offerers = new HashMap<>();
 
         try {
-            DefaultBlockParameter startBlock = DefaultBlockParameterName.EARLIEST;
-            EthFilter filter = getTipEventFilterByName(event, startBlock, identifier);
-            EthLog logs = web3j.ethGetLogs(filter).send();
-            //check logs to find tokenId
-            if (logs != null && logs.getLogs().size() > 0)
-            {
-                for (EthLog.LogResult<?> ethLog : logs.getLogs())
-                {
-                    final EventValues eventValues = staticExtractEventParameters(event, (Log) ethLog.get()); //extract offerer, identifier, commitmentId
-                    String tipIdStr = eventValues.getIndexedValues().get(2).getValue().toString(); //commitment ID (token ID of offer)
-                    BigInteger tipId = new BigInteger(tipIdStr);
-                    receivedTipIds.add(tipId);
-                }
-            }
-
+            //offerer and tip ID come straight off the response as it's read
+            tipLogReader.readCreateTips(TipIndexer.identifierHash(identifier), (tipId, offerer) -> {
+                receivedTipIds.add(tipId);
+                offerers.put(tipId, offerer);
+            });
         } catch (Exception e) {
             e.printStackTrace();
         }
 
         //find live tips
-        List<Bool> liveTips = fetchLiveTips(receivedTipIds);
-
-        for (int i = 0; i < receivedTipIds.size(); i++)
-        {
-            BigInteger tipId = receivedTipIds.get(i);
-            Bool tipCompleted = liveTips.get(i);
-            if (!tipCompleted.getValue())
-            {
-                Tip thisTip = fetchTipByID(tipId);
-                tips.put(tipId, thisTip);
-            }
-        }
-
-        return tips;
+        return fetchOpenTips(receivedTipIds, offerers, identifier, null);
     }
 
-    private Event getTipCreateEvent()
+    private Map<BigInteger, Tip> getIndexedTipListForUser(String identifier)
     {
-        List<TypeReference<?>> paramList = new ArrayList<>();
-        paramList.add(new TypeReference<Address>(true) { });
-        paramList.add(new TypeReference<Utf8String>(true) { });
-        paramList.add(new TypeReference<Uint256>(true) { });
-
-        return new Event("CreateTip", paramList);
-    }
+        //while the event stream is live the index holds current snapshots; no need to go to the node
+        Map<BigInteger, Tip> cachedTips = tipIndexer.getCachedTips(identifier);
+        if (cachedTips != null) return cachedTips;
 
-    private EthFilter getTipEventFilterByName(Event event, DefaultBlockParameter startBlock, String forIdentifier)
-    {
-        final org.web3j.protocol.core.methods.request.EthFilter filter =
-                new org.web3j.protocol.core.methods.request.EthFilter(
-                        startBlock,
-                        DefaultBlockParameterName.LATEST,
-                        CONTRACT) // retort contract address
-                        .addSingleTopic(EventEncoder.encode(event));// commit event format
+        List<BigInteger> tipIds = tipIndexer.getOpenTipIds(identifier);
+        Map<BigInteger, String> offerers = new HashMap<>();
+        for (BigInteger tipId : tipIds)
+        {
+            offerers.put(tipId, tipIndexer.getOfferer(tipId));
+        }
 
-        //form keccak256 of identifier for event search (logs encode strings as keccak256 hash)
-        Keccak.Digest256 digest = new Keccak.Digest256();
-        byte[] digestBytes = digest.digest(forIdentifier.getBytes());
+        List<BigInteger> closedTips = new ArrayList<>();
+        Map<BigInteger, Tip> tips = fetchOpenTips(tipIds, offerers, identifier, closedTips);
 
-        filter.addSingleTopic(null); //committer address (can by any).
-        filter.addSingleTopic(Numeric.toHexString(digestBytes)); //identifier of the "King Midas" that committer wanted to sign this NFT
+        //drop tips collected since they were indexed
+        tipIndexer.removeTips(identifier, closedTips);
 
-        return filter;
+        return tips;
     }
 
-    private Tip fetchTipByID(BigInteger commitmentId)
+    // Fetch status and details of all the tips in one batched call, see TipFetcher
+    private Map<BigInteger, Tip> fetchOpenTips(List<BigInteger> tipIds, Map<BigInteger, String> offerers, String identifier,
+                                               @Nullable List<BigInteger> completedTips)
     {
-        final Web3j web3j = getWeb3j();
-        //fetch the commitment data from the retort contract
-        Function tipFunc = getTip(commitmentId);
-        String result = "";
-        try
-        {
-            result = callSmartContractFunction(web3j, tipFunc, CONTRACT, ZERO_ADDRESS);
-        }
-        catch (Exception e)
-        {
-            e.printStackTrace();
-        }
-
-        //form a commitment
-        return new Tip(tipFunc, result);
-    }
+        Map<BigInteger, Tip> tips = new HashMap<>();
 
-    private List<Bool> fetchLiveTips(List<BigInteger> receivedTipIds)
-    {
-        //fetch the commitment data from the retort contract
-        Function tipFunc = getTipStatus(receivedTipIds);
-        List<Bool> result;
         try
         {
-            result = callSmartContractFunctionArray(tipFunc, CONTRACT, ZERO_ADDRESS);
+            Map<BigInteger, TipQuery> queries = tipFetcher.fetchTips(tipIds);
+            for (Map.Entry<BigInteger, TipQuery> entry : queries.entrySet())
+            {
+                BigInteger tipId = entry.getKey();
+                if (!entry.getValue().completed.getValue())
+                {
+                    tips.put(tipId, new Tip(entry.getValue(), offerers.get(tipId), identifier));
+                }
+                else if (completedTips != null)
+                {
+                    completedTips.add(tipId);
+                }
+            }
         }
         catch (Exception e)
         {
             e.printStackTrace();
-            result = new ArrayList<>();
-        }
-
-        return result;
-    }
-
-
-
-    /***********************************
-     * Ethereum Web3j Function call generators
-     ***********************************/
-
-    private static Function approve(String adminAddress, BigInteger newAllowance)
-    {
-        return new Function("approve",
-                Arrays.asList(new Address(adminAddress), new Uint256(newAllowance)),
-                Arrays.<TypeReference<?>>asList(new TypeReference<Bool>() {}));
-    }
-
-    private static Function collectTip(List<BigInteger> tipIds, CoSignedIdentifierAttestation wrappedAttestation)
-    {
-        return new Function("collectTip",
-                Arrays.asList(getTipIds(tipIds), new DynamicBytes(wrappedAttestation.getDerEncoding())),
-                Arrays.<TypeReference<?>>asList(new TypeReference<Bool>() {}));
-    }
-
-    protected static org.web3j.abi.datatypes.DynamicArray<?> getTipIds(List<BigInteger> tipIds)
-    {
-        List<Uint256> tipIdVals = new ArrayList<>();
-        for (BigInteger tipId : tipIds) { tipIdVals.add(new Uint256(tipId)); }
-        return new org.web3j.abi.datatypes.DynamicArray<>(
-                Uint256.class, tipIdVals);
-    }
-
-    private Function getTipStatus(List<BigInteger> receivedTipIds)
-    {
-        return new Function("getTipStatus",
-                Arrays.asList(getTipIds(receivedTipIds)),
-                Arrays.<TypeReference<?>>asList(new TypeReference<DynamicArray<Bool>>() {}));
-    }
-
-    //This is a ghastly hack, but since this part of web3j is broken this is the most expedient fix.
-    //Implementing this in web3js you'd need to call like this:
-    //[["Token address","Token amount","0x00"]],"Twitter ID" <-- NB we don't yet implement the 0x00 part. This is pre-auth and will be an auth
-    private static String tipBytes(List<PaymentToken> tokens, String identifier)
-    {
-        String zeroes = "0000000000000000000000000000000000000000000000000000000000000000";
-        String idHex = Numeric.toHexStringNoPrefix((new Utf8String(identifier)).getValue().getBytes(StandardCharsets.UTF_8));
-        int ethWords = (idHex.length() / 64) + 1;
-        idHex = idHex + zeroes;
-        idHex = idHex.substring(0, ethWords*64);
-
-        String function = "0x9218e0ee" + "0000000000000000000000000000000000000000000000000000000000000040";
-
-        if (tokens.size() > 0)
-        {
-            function +=
-                    "0000000000000000000000000000000000000000000000000000000000000120" +
-                            "0000000000000000000000000000000000000000000000000000000000000001" +
-                            "0000000000000000000000000000000000000000000000000000000000000020" +
-                            "000000000000000000000000" + Numeric.cleanHexPrefix(tokens.get(0).address.getValue()) +
-                            Numeric.toHexStringNoPrefixZeroPadded(tokens.get(0).value.getValue(), 64) +
-                            "0000000000000000000000000000000000000000000000000000000000000060" +
-                            "0000000000000000000000000000000000000000000000000000000000000001";
-        }
-        else
-        { //special case if payment tokens is empty (ie only eth payment)
-            function +=
-                    "0000000000000000000000000000000000000000000000000000000000000060";
         }
 
-        function += "0000000000000000000000000000000000000000000000000000000000000000" +
-                Numeric.toHexStringNoPrefixZeroPadded(BigInteger.valueOf(identifier.length()), 64) +
-                idHex;
-
-        return function;
-    }
-
-    protected static org.web3j.abi.datatypes.DynamicArray<?> getERC721Array(List<ERC721Token> tokens)
-    {
-        return new org.web3j.abi.datatypes.DynamicArray<ERC721Token>(
-                ERC721Token.class, tokens);
-    }
-
-    protected static org.web3j.abi.datatypes.DynamicArray<?> getPaymentTokenArray(PaymentToken token)
-    {
-        if (token == null)
-        {
-            return new org.web3j.abi.datatypes.DynamicArray<>(PaymentToken.class, new ArrayList<>());
-        }
-        else
-        {
-            return new org.web3j.abi.datatypes.DynamicArray<>(
-                    PaymentToken.class, Collections.singletonList(token));
-        }
+        return tips;
     }
 
-    private static Function getTip(BigInteger tokenId) {
-        return new Function(
-                "getTip",
-                Arrays.asList(new Uint256(tokenId)),
-                Arrays.<TypeReference<?>>asList(new TypeReference<DynamicArray<PaymentToken>>() {},
-                        new TypeReference<Address>() {}, new TypeReference<Uint256>() {},
-                        new TypeReference<Utf8String>() {}, new TypeReference<Address>() {},
-                        new TypeReference<Bool>() {}));
-    }
 
 
     /***********************************
@@ -1111,20 +1197,4 @@ public class APIController
 
         return rtn;
     }
-
-    private String loadFile(String fileName) {
-        byte[] buffer = new byte[0];
-        try {
-            InputStream in = getClass()
-                    .getClassLoader().getResourceAsStream(fileName);
-            buffer = new byte[in.available()];
-            int len = in.read(buffer);
-            if (len < 1) {
-                throw new IOException("Nothing is read.");
-            }
-        } catch (Exception ex) {
-            ex.printStackTrace();
-        }
-        return new String(buffer);
-    }
 }
\ No newline at end of file
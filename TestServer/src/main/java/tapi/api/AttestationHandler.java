@@ -1,19 +1,26 @@
 package tapi.api;
 
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
 import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
 import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
 import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
 import org.bouncycastle.crypto.params.ECPublicKeyParameters;
-import org.bouncycastle.math.ec.ECMultiplier;
 import org.bouncycastle.math.ec.ECPoint;
-import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+import org.jetbrains.annotations.Nullable;
 import org.web3j.crypto.ECKeyPair;
 import org.web3j.utils.Numeric;
+import tapi.api.crypto.CoSignedIdentifierAttestation;
 import tapi.api.crypto.IdentifierAttestation;
 import tapi.api.crypto.SignedIdentifierAttestation;
+import tapi.api.crypto.core.BatchSignatureVerifier;
 import tapi.api.crypto.core.SignatureUtility;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import static tapi.api.crypto.core.SignatureUtility.ECDSA_DOMAIN;
 
@@ -27,7 +34,7 @@ public class AttestationHandler {
             ECKeyPair attestationKeyPair = ECKeyPair.create(Numeric.toBigInt(keyHex));
             ECPrivateKeyParameters privKey = new ECPrivateKeyParameters(attestationKeyPair.getPrivateKey(), ECDSA_DOMAIN);
 
-            ECPoint Q = createBasePointMultiplier().multiply(ECDSA_DOMAIN.getG(), attestationKeyPair.getPrivateKey());
+            ECPoint Q = SignatureUtility.multiplyBase(attestationKeyPair.getPrivateKey());
             ECPublicKeyParameters publicKey = new ECPublicKeyParameters(Q, ECDSA_DOMAIN);
 
             attestorKeys = new AsymmetricCipherKeyPair(
@@ -47,15 +54,88 @@ public class AttestationHandler {
         return new SignedIdentifierAttestation(signedAttestationBytes, attestorKeys.getPublic());
     }
 
+    public static CoSignedIdentifierAttestation restoreCoSignedAttestation(byte[] coSignedAttestationBytes) throws IOException
+    {
+        return new CoSignedIdentifierAttestation(coSignedAttestationBytes, attestorKeys.getPublic());
+    }
+
+    public static class VerifiedAttestation
+    {
+        public final boolean valid;
+        @Nullable
+        public final String address;    // the subject's address
+        @Nullable
+        public final String identifier; // the attestation subject: the Twitter URL and user ID
+
+        VerifiedAttestation(boolean valid, @Nullable String address, @Nullable String identifier)
+        {
+            this.valid = valid;
+            this.address = address;
+            this.identifier = identifier;
+        }
+    }
+
+    /**
+     * Check a set of CoSignedIdentifierAttestation DER encodings, as restoreCoSignedAttestation would check each one:
+     * the attestor's signature on the inner attestation and the subject's personal signature over the
+     * SignedIdentifierAttestation. All the signatures are verified together in one BatchSignatureVerifier, so
+     * restoring or checking many attestations costs far less than constructing each of them.
+     * @return a result for each attestation, in order; address and identifier are null if it couldn't be parsed
+     */
+    public static List<VerifiedAttestation> verifyCoSignedAttestations(List<byte[]> coSignedAttestations)
+    {
+        BatchSignatureVerifier verifier = new BatchSignatureVerifier();
+        AsymmetricKeyParameter attestorKey = attestorKeys.getPublic();
+        String attestorAddress = SignatureUtility.addressFromKey(attestorKey);
+        int[] attestorEntry = new int[coSignedAttestations.size()];
+        int[] subjectEntry = new int[coSignedAttestations.size()];
+        String[] addresses = new String[coSignedAttestations.size()];
+        String[] identifiers = new String[coSignedAttestations.size()];
+
+        for (int i = 0; i < coSignedAttestations.size(); i++)
+        {
+            attestorEntry[i] = -1;
+            subjectEntry[i] = -1;
+            try
+            {
+                //CoSigned: { SignedIdentifierAttestation, algorithm, subject signature }
+                //Signed:   { IdentifierAttestation, algorithm, attestor signature }
+                ASN1Sequence coSigned = ASN1Sequence.getInstance(ASN1Primitive.fromByteArray(coSignedAttestations.get(i)));
+                ASN1Sequence signed = ASN1Sequence.getInstance(coSigned.getObjectAt(0));
+                IdentifierAttestation att = new IdentifierAttestation(signed.getObjectAt(0).toASN1Primitive().getEncoded());
+                if (!AlgorithmIdentifier.getInstance(signed.getObjectAt(1)).equals(att.getSigningAlgorithm())) continue;
+                byte[] attestorSignature = DERBitString.getInstance(signed.getObjectAt(2)).getBytes();
+                byte[] subjectSignature = DERBitString.getInstance(coSigned.getObjectAt(2)).getBytes();
+
+                AsymmetricKeyParameter subjectKey = SignatureUtility.restoreKeyFromSPKI(att.getSubjectPublicKeyInfo().getEncoded());
+                addresses[i] = SignatureUtility.addressFromKey(subjectKey);
+                identifiers[i] = att.getSubject();
+
+                //the encodings SignedIdentifierAttestation.verify() and CoSignedIdentifierAttestation.verify() sign over
+                byte[] signedAttestation = SignedIdentifierAttestation.constructSignedAttestation(att, attestorSignature);
+                attestorEntry[i] = verifier.add(att.getDerEncoding(), attestorSignature, attestorKey, attestorAddress);
+                subjectEntry[i] = verifier.addPersonal(signedAttestation, subjectSignature, subjectKey, addresses[i]);
+            }
+            catch (Exception e)
+            {
+                //unparseable; reported as invalid
+            }
+        }
+
+        boolean[] valid = verifier.verify();
+        List<VerifiedAttestation> results = new ArrayList<>(coSignedAttestations.size());
+        for (int i = 0; i < coSignedAttestations.size(); i++)
+        {
+            boolean ok = attestorEntry[i] >= 0 && valid[attestorEntry[i]] && valid[subjectEntry[i]];
+            results.add(new VerifiedAttestation(ok, addresses[i], identifiers[i]));
+        }
+        return results;
+    }
+
     public static SignedIdentifierAttestation createPublicAttestation(AsymmetricKeyParameter subjectPublicKey, String id, String identifier)
     {
         IdentifierAttestation att = new IdentifierAttestation(id, identifier, subjectPublicKey); //  makePublicIdAttestation(subjectPublicKey, "TW", identifier);
         SignedIdentifierAttestation signedAttestation = new SignedIdentifierAttestation(att, attestorKeys);
         return signedAttestation;
     }
-
-    protected static ECMultiplier createBasePointMultiplier()
-    {
-        return new FixedPointCombMultiplier();
-    }
 }
@@ -0,0 +1,314 @@
+package tapi.api;
+
+import io.reactivex.Observable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import jdbm.PrimaryTreeMap;
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+import jdbm.RecordManagerOptions;
+import jdbm.Serializer;
+import jdbm.SerializerInput;
+import jdbm.SerializerOutput;
+import org.jetbrains.annotations.Nullable;
+import tapi.api.crypto.CoSignedIdentifierAttestation;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps each user's CoSignedIdentifierAttestation and last tip list across restarts, keyed by Twitter ID,
+ * in JDBM B-trees (the attestation as its DER encoding).
+ *
+ * Reads are served from memory and fall through to the store on a miss, so only users who come back are
+ * loaded and re-verified. Writes go to memory and are flushed to the store in one commit every
+ * flushSeconds, after which clean entries beyond cacheSize are dropped from memory.
+ */
+public class AttestationStore
+{
+    private final RecordManager recordManager;
+    private final PrimaryTreeMap<String, byte[]> attestationRecords;
+    private final PrimaryTreeMap<String, Map<BigInteger, Tip>> tipRecords;
+    private final int cacheSize;
+
+    private final Map<String, CoSignedIdentifierAttestation> attestations = new ConcurrentHashMap<>();
+    private final Map<String, Map<BigInteger, Tip>> tips = new ConcurrentHashMap<>();
+    // written or removed since the last flush; a dirty key that's missing from memory is a pending delete
+    private final Set<String> dirtyAttestations = ConcurrentHashMap.newKeySet();
+    private final Set<String> dirtyTips = ConcurrentHashMap.newKeySet();
+    // held while a key is marked dirty with its write, cleared after its flush or evicted, so none of these can
+    // land between the other's two steps
+    private final Object dirtyLock = new Object();
+
+    @Nullable
+    private Disposable flushDisposable;
+
+    public AttestationStore(File storeFile, int cacheSize) throws IOException
+    {
+        File parent = storeFile.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) parent.mkdirs();
+
+        Properties options = new Properties();
+        options.setProperty(RecordManagerOptions.CACHE_SIZE, String.valueOf(cacheSize));
+        recordManager = RecordManagerFactory.createRecordManager(storeFile.getPath(), options);
+        attestationRecords = recordManager.treeMap("attestations");
+        tipRecords = recordManager.treeMap("tips", new TipListSerializer());
+        this.cacheSize = cacheSize;
+    }
+
+    public void start(long flushSeconds)
+    {
+        flushDisposable = Observable.interval(flushSeconds, flushSeconds, TimeUnit.SECONDS, Schedulers.io())
+                .doOnNext(l -> flush())
+                .subscribe();
+    }
+
+    public void close()
+    {
+        if (flushDisposable != null && !flushDisposable.isDisposed())
+        {
+            flushDisposable.dispose();
+        }
+        flush();
+        synchronized (recordManager)
+        {
+            try
+            {
+                recordManager.close();
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /***********************************
+     * Attestations
+     ***********************************/
+
+    public boolean hasAttestation(String id)
+    {
+        return getAttestation(id) != null;
+    }
+
+    @Nullable
+    public CoSignedIdentifierAttestation getAttestation(String id)
+    {
+        CoSignedIdentifierAttestation att = attestations.get(id);
+        if (att != null || dirtyAttestations.contains(id)) return att;
+
+        byte[] der;
+        synchronized (recordManager)
+        {
+            der = attestationRecords.get(id);
+        }
+        if (der == null) return null;
+
+        try
+        {
+            att = AttestationHandler.restoreCoSignedAttestation(der);
+            return cacheLoaded(id, att, attestations, dirtyAttestations);
+        }
+        catch (Exception e)
+        {
+            //eg the attestor key changed; the user will be asked to sign again
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public void putAttestation(String id, CoSignedIdentifierAttestation att)
+    {
+        synchronized (dirtyLock)
+        {
+            attestations.put(id, att);
+            dirtyAttestations.add(id);
+        }
+    }
+
+    /***********************************
+     * Tip lists
+     ***********************************/
+
+    @Nullable
+    public Map<BigInteger, Tip> getTips(String id)
+    {
+        Map<BigInteger, Tip> tipList = tips.get(id);
+        if (tipList != null || dirtyTips.contains(id)) return tipList;
+
+        synchronized (recordManager)
+        {
+            tipList = tipRecords.get(id);
+        }
+        if (tipList == null) return null;
+
+        return cacheLoaded(id, tipList, tips, dirtyTips);
+    }
+
+    public void putTips(String id, Map<BigInteger, Tip> tipList)
+    {
+        synchronized (dirtyLock)
+        {
+            tips.put(id, tipList);
+            dirtyTips.add(id);
+        }
+    }
+
+    public void removeTips(String id)
+    {
+        synchronized (dirtyLock)
+        {
+            tips.remove(id);
+            dirtyTips.add(id);
+        }
+    }
+
+    // A value read from the store only goes into memory if nothing was written or removed since it was read
+    @Nullable
+    private <T> T cacheLoaded(String id, T loaded, Map<String, T> memory, Set<String> dirty)
+    {
+        synchronized (dirtyLock)
+        {
+            if (dirty.contains(id)) return memory.get(id);
+            T existing = memory.putIfAbsent(id, loaded);
+            return existing != null ? existing : loaded;
+        }
+    }
+
+    /***********************************
+     * Write-behind
+     ***********************************/
+
+    public void flush()
+    {
+        if (dirtyAttestations.isEmpty() && dirtyTips.isEmpty()) return;
+
+        List<String> attestationKeys = new ArrayList<>(dirtyAttestations);
+        List<String> tipKeys = new ArrayList<>(dirtyTips);
+        synchronized (recordManager)
+        {
+            try
+            {
+                writeDirty(attestationKeys, dirtyAttestations, attestations, attestationRecords, CoSignedIdentifierAttestation::getDerEncoding);
+                writeDirty(tipKeys, dirtyTips, tips, tipRecords, tipList -> tipList);
+                recordManager.commit();
+            }
+            catch (Exception e)
+            {
+                e.printStackTrace();
+                //nothing from this flush reached the store; try again next time
+                dirtyAttestations.addAll(attestationKeys);
+                dirtyTips.addAll(tipKeys);
+                try
+                {
+                    recordManager.rollback();
+                }
+                catch (IOException re)
+                {
+                    re.printStackTrace();
+                }
+                return;
+            }
+
+            //under the store lock so a concurrent flush can't clear a key this one evicts
+            trim(attestations, dirtyAttestations);
+            trim(tips, dirtyTips);
+        }
+    }
+
+    private interface Encoder<T, R>
+    {
+        R encode(T value) throws IOException;
+    }
+
+    // Caller holds the recordManager lock. A key stays dirty if it was written again while being flushed
+    private <T, R> void writeDirty(List<String> keys, Set<String> dirty, Map<String, T> memory, Map<String, R> records,
+                                   Encoder<T, R> encoder) throws IOException
+    {
+        for (String key : keys)
+        {
+            T value = memory.get(key);
+            if (value != null) records.put(key, encoder.encode(value));
+            else records.remove(key);
+            synchronized (dirtyLock)
+            {
+                if (memory.get(key) == value) dirty.remove(key);
+            }
+        }
+    }
+
+    // Drop clean entries once the in-memory working set is over size; they reload from the store on demand
+    private <T> void trim(Map<String, T> memory, Set<String> dirty)
+    {
+        Iterator<Map.Entry<String, T>> entries = memory.entrySet().iterator();
+        while (memory.size() > cacheSize && entries.hasNext())
+        {
+            Map.Entry<String, T> entry = entries.next();
+            synchronized (dirtyLock)
+            {
+                //only if it's still the flushed value and hasn't been written since
+                if (!dirty.contains(entry.getKey())) memory.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static class TipListSerializer implements Serializer<Map<BigInteger, Tip>>
+    {
+        @Override
+        public void serialize(SerializerOutput out, Map<BigInteger, Tip> tipList) throws IOException
+        {
+            out.writePackedInt(tipList.size());
+            for (Map.Entry<BigInteger, Tip> entry : tipList.entrySet())
+            {
+                Tip tip = entry.getValue();
+                out.writeUTF(entry.getKey().toString());
+                out.writeUTF(tip.weiValue.toString());
+                out.writeUTF(tip.offerer != null ? tip.offerer : "");
+                out.writeUTF(tip.identifier != null ? tip.identifier : "");
+                out.writeUTF(tip.payee != null ? tip.payee : "");
+                out.writeBoolean(tip.completed);
+                PaymentToken[] tokens = tip.paymentTokens != null ? tip.paymentTokens : new PaymentToken[0];
+                out.writePackedInt(tokens.length);
+                for (PaymentToken token : tokens)
+                {
+                    out.writeUTF(token.address.toString());
+                    out.writeUTF(token.value.getValue().toString());
+                }
+            }
+        }
+
+        @Override
+        public Map<BigInteger, Tip> deserialize(SerializerInput in) throws IOException
+        {
+            int count = in.readPackedInt();
+            Map<BigInteger, Tip> tipList = new HashMap<>();
+            for (int i = 0; i < count; i++)
+            {
+                BigInteger tipId = new BigInteger(in.readUTF());
+                BigInteger weiValue = new BigInteger(in.readUTF());
+                String offerer = in.readUTF();
+                String identifier = in.readUTF();
+                String payee = in.readUTF();
+                boolean completed = in.readBoolean();
+                PaymentToken[] tokens = new PaymentToken[in.readPackedInt()];
+                for (int j = 0; j < tokens.length; j++)
+                {
+                    tokens[j] = new PaymentToken(in.readUTF(), in.readUTF());
+                }
+                tipList.put(tipId, new Tip(tokens, weiValue, offerer, identifier, payee.isEmpty() ? null : payee, completed));
+            }
+            return tipList;
+        }
+    }
+}
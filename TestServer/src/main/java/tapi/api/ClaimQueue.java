@@ -0,0 +1,117 @@
+package tapi.api;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends claim transactions from a small worker pool, so the HTTP request that starts a claim returns straight
+ * away with a ticket instead of waiting on signing and ethSendRawTransaction. The ticket's status can then be
+ * polled (see /claimStatus). The queue is bounded; when it's full a claim is turned away rather than piling up.
+ *
+ * Finished tickets are kept for TICKET_EXPIRY_MINUTES.
+ */
+public class ClaimQueue
+{
+    private static final long TICKET_EXPIRY_MINUTES = 60;
+
+    public enum Status { QUEUED, SENDING, SENT, FAILED }
+
+    public static class ClaimTicket
+    {
+        final String ticket;
+        volatile Status status = Status.QUEUED;
+        @Nullable
+        volatile String txHash;
+        @Nullable
+        volatile String error;
+        final transient long created = System.currentTimeMillis();
+
+        ClaimTicket(String ticket)
+        {
+            this.ticket = ticket;
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final Map<String, ClaimTicket> tickets = new ConcurrentHashMap<>();
+
+    public ClaimQueue(int workers, int capacity)
+    {
+        executor = new ThreadPoolExecutor(workers, workers, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(capacity));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queue a claim transaction
+     * @param send signs and sends the transaction, returning its hash
+     * @param onFailure called if the transaction couldn't be sent
+     * @return ticket, or null if the queue is full
+     */
+    @Nullable
+    public ClaimTicket submit(Callable<String> send, Runnable onFailure)
+    {
+        expireTickets();
+        ClaimTicket ticket = new ClaimTicket(UUID.randomUUID().toString());
+        tickets.put(ticket.ticket, ticket);
+
+        try
+        {
+            executor.execute(() -> {
+                ticket.status = Status.SENDING;
+                try
+                {
+                    ticket.txHash = send.call();
+                    ticket.status = Status.SENT;
+                }
+                catch (Exception e)
+                {
+                    e.printStackTrace();
+                    ticket.error = e.getMessage();
+                    ticket.status = Status.FAILED;
+                    onFailure.run();
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            tickets.remove(ticket.ticket);
+            return null;
+        }
+
+        return ticket;
+    }
+
+    @Nullable
+    public ClaimTicket getTicket(String ticket)
+    {
+        return tickets.get(ticket);
+    }
+
+    public void shutdown()
+    {
+        //let queued claims go out
+        executor.shutdown();
+        try
+        {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void expireTickets()
+    {
+        long expiry = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(TICKET_EXPIRY_MINUTES);
+        tickets.values().removeIf(t -> t.created < expiry && (t.status == Status.SENT || t.status == Status.FAILED));
+    }
+}
@@ -0,0 +1,216 @@
+package tapi.api;
+
+import org.jetbrains.annotations.Nullable;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.response.EthCall;
+import org.web3j.utils.Numeric;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import static org.web3j.protocol.core.methods.request.Transaction.createEthCallTransaction;
+
+/**
+ * decimals(), symbol() and name() of ERC20 tokens. These never change, so each token is fetched once - all three
+ * calls for all the tokens asked for going out in one JSON-RPC batch - and kept for the life of the server.
+ *
+ * Tokens that return bytes32 rather than string for symbol/name (eg MKR) are handled. A token whose decimals()
+ * can't be read isn't cached, so it's tried again next time.
+ *
+ * symbol and name are whatever the token contract chooses to return, so anything outside a plain printable set or
+ * longer than a symbol or name has any need to be is dropped (left empty) rather than passed on to a page.
+ */
+public class ERC20Metadata
+{
+    private static final String ZERO_ADDRESS = "0x0000000000000000000000000000000000000000";
+    private static final Pattern SAFE_SYMBOL = Pattern.compile("^[A-Za-z0-9 ._+$-]{1,16}$");
+    private static final Pattern SAFE_NAME = Pattern.compile("^[A-Za-z0-9 ._+$()-]{1,64}$");
+
+    public static class TokenInfo
+    {
+        public final String address;
+        public final int decimals;
+        public final String symbol;
+        public final String name;
+
+        TokenInfo(String address, int decimals, String symbol, String name)
+        {
+            this.address = address;
+            this.decimals = decimals;
+            this.symbol = symbol;
+            this.name = name;
+        }
+
+        /**
+         * Whole-token amount to the token's smallest unit
+         * @throws ArithmeticException if the amount is negative or has more decimal places than the token
+         */
+        public BigInteger toUnits(BigDecimal amount)
+        {
+            if (amount.signum() < 0) throw new ArithmeticException("Negative token amount " + amount.toPlainString());
+            BigDecimal units = amount.movePointRight(decimals);
+            if (units.stripTrailingZeros().scale() > 0)
+            {
+                throw new ArithmeticException(amount.toPlainString() + " is finer than " + symbol + "'s " + decimals + " decimals");
+            }
+            return units.toBigIntegerExact();
+        }
+
+        /**
+         * Smallest unit to whole-token amount
+         */
+        public BigDecimal fromUnits(BigInteger units)
+        {
+            return new BigDecimal(units).movePointLeft(decimals).stripTrailingZeros();
+        }
+    }
+
+    private final EthereumNode node;
+    private final Map<String, TokenInfo> tokens = new ConcurrentHashMap<>();
+
+    public ERC20Metadata(EthereumNode node)
+    {
+        this.node = node;
+    }
+
+    /**
+     * @return the token's metadata, or null if it couldn't be read (not a token, or the node didn't answer)
+     */
+    @Nullable
+    public TokenInfo getToken(String address)
+    {
+        return getTokens(Collections.singletonList(address)).get(address.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @return lowercase address -> metadata, for the tokens that could be read
+     */
+    public Map<String, TokenInfo> getTokens(Collection<String> addresses)
+    {
+        Map<String, TokenInfo> found = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (String address : addresses)
+        {
+            String key = address.toLowerCase(Locale.ROOT);
+            TokenInfo info = tokens.get(key);
+            if (info != null) found.put(key, info);
+            else missing.add(key);
+        }
+
+        if (!missing.isEmpty())
+        {
+            found.putAll(fetchTokens(new ArrayList<>(missing)));
+        }
+
+        return found;
+    }
+
+    private Map<String, TokenInfo> fetchTokens(List<String> addresses)
+    {
+        Map<String, TokenInfo> fetched = new HashMap<>();
+        List<Request<?, EthCall>> calls = new ArrayList<>();
+        for (String address : addresses)
+        {
+            calls.add(call(address, "decimals"));
+            calls.add(call(address, "symbol"));
+            calls.add(call(address, "name"));
+        }
+
+        try
+        {
+            List<EthCall> results = node.sendBatch(calls);
+            for (int i = 0; i < addresses.size(); i++)
+            {
+                BigInteger decimals = decodeUint(results.get(i * 3));
+                if (decimals == null) continue;
+
+                String address = addresses.get(i);
+                TokenInfo info = new TokenInfo(address, decimals.intValue(),
+                        safe(decodeString(results.get(i * 3 + 1)), SAFE_SYMBOL),
+                        safe(decodeString(results.get(i * 3 + 2)), SAFE_NAME));
+                tokens.put(address, info);
+                fetched.put(address, info);
+            }
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+
+        return fetched;
+    }
+
+    private Request<?, EthCall> call(String address, String method)
+    {
+        Function function = new Function(method, Collections.emptyList(), Collections.emptyList());
+        return node.getWeb3j().ethCall(
+                createEthCallTransaction(ZERO_ADDRESS, address, FunctionEncoder.encode(function)),
+                DefaultBlockParameterName.LATEST);
+    }
+
+    // The return values are a single static word or a single string, so they're read straight off the ABI words
+
+    @Nullable
+    private static BigInteger decodeUint(@Nullable EthCall call)
+    {
+        byte[] data = resultOf(call);
+        if (data == null || data.length < 32) return null;
+        BigInteger result = new BigInteger(1, Arrays.copyOfRange(data, 0, 32));
+        //decimals is a uint8; anything else isn't a token
+        return result.bitLength() <= 8 ? result : null;
+    }
+
+    private static String decodeString(@Nullable EthCall call)
+    {
+        byte[] data = resultOf(call);
+        if (data == null) return "";
+
+        //bytes32 return: exactly one word, zero padded
+        if (data.length == 32)
+        {
+            int len = 0;
+            while (len < data.length && data[len] != 0) len++;
+            return new String(data, 0, len, StandardCharsets.UTF_8);
+        }
+
+        //string return: offset word, then the length and bytes at that offset
+        if (data.length < 64) return "";
+        BigInteger offset = new BigInteger(1, Arrays.copyOfRange(data, 0, 32));
+        if (offset.compareTo(BigInteger.valueOf(data.length - 32)) > 0) return "";
+        int start = offset.intValue() + 32;
+        BigInteger len = new BigInteger(1, Arrays.copyOfRange(data, start - 32, start));
+        if (len.compareTo(BigInteger.valueOf(data.length - start)) > 0) return "";
+        return new String(data, start, len.intValue(), StandardCharsets.UTF_8);
+    }
+
+    private static String safe(String value, Pattern allowed)
+    {
+        String trimmed = value.trim();
+        return allowed.matcher(trimmed).matches() ? trimmed : "";
+    }
+
+    @Nullable
+    private static byte[] resultOf(@Nullable EthCall call)
+    {
+        if (call == null || call.hasError() || call.isReverted()) return null;
+        String value = call.getValue();
+        if (value == null || Numeric.cleanHexPrefix(value).isEmpty()) return null;
+        return Numeric.hexStringToByteArray(value);
+    }
+}
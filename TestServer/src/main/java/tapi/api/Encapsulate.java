@@ -1,6 +0,0 @@
-package tapi.api;
-
-public class Encapsulate
-{
-    TwitterData data;
-}
@@ -0,0 +1,152 @@
+package tapi.api;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.http.HttpService;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared connection to the Ethereum node. Holds one OkHttpClient (and so one connection pool with keep-alive)
+ * and one Web3j instance for the lifetime of the server, instead of building a new client for every call.
+ *
+ * Web3j uses blocking OkHttp calls, which bypass the Dispatcher limits, so in-flight requests per host are
+ * capped with a semaphore interceptor.
+ */
+public class EthereumNode
+{
+    private static final long TIMEOUT_SECONDS = 15;
+
+    private final String nodeUrl;
+    private final OkHttpClient httpClient;
+    private final Web3j web3j;
+
+    public EthereumNode(String nodeUrl, int maxRequestsPerHost, int maxIdleConnections, long keepAliveSeconds)
+    {
+        this.nodeUrl = nodeUrl;
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        dispatcher.setMaxRequests(Math.max(dispatcher.getMaxRequests(), maxRequestsPerHost));
+
+        httpClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveSeconds, TimeUnit.SECONDS))
+                .dispatcher(dispatcher)
+                .addInterceptor(new HostConcurrencyLimit(maxRequestsPerHost))
+                .connectTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .writeTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true)
+                .build();
+
+        web3j = Web3j.build(new HttpService(nodeUrl, httpClient, false));
+    }
+
+    public Web3j getWeb3j()
+    {
+        return web3j;
+    }
+
+    public OkHttpClient getHttpClient()
+    {
+        return httpClient;
+    }
+
+    public String getNodeUrl()
+    {
+        return nodeUrl;
+    }
+
+    /**
+     * Send requests as one JSON-RPC batch, so they share a single HTTP round trip.
+     * Responses are returned in request order (matched up by id, since a node may answer a batch in any order);
+     * an entry is null if the node left that request out of its reply.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Response<?>> List<T> sendBatch(List<? extends Request<?, T>> requests) throws IOException
+    {
+        List<T> results = new ArrayList<>(requests.size());
+        if (requests.isEmpty()) return results;
+
+        BatchRequest batch = web3j.newBatch();
+        for (Request<?, T> request : requests)
+        {
+            batch.add(request);
+        }
+
+        Map<Long, Response<?>> byId = new HashMap<>();
+        for (Response<?> response : batch.send().getResponses())
+        {
+            byId.put(response.getId(), response);
+        }
+
+        for (Request<?, T> request : requests)
+        {
+            results.add((T) byId.get(request.getId()));
+        }
+
+        return results;
+    }
+
+    public void shutdown()
+    {
+        web3j.shutdown();
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+    }
+
+    /**
+     * Blocks the calling thread while the host already has the maximum number of requests in flight.
+     */
+    private static class HostConcurrencyLimit implements Interceptor
+    {
+        private final int maxPerHost;
+        private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+        HostConcurrencyLimit(int maxPerHost)
+        {
+            this.maxPerHost = maxPerHost;
+        }
+
+        @Override
+        public okhttp3.Response intercept(Chain chain) throws IOException
+        {
+            Semaphore permits = hostPermits.computeIfAbsent(chain.request().url().host(), h -> new Semaphore(maxPerHost, true));
+            try
+            {
+                if (!permits.tryAcquire(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                {
+                    throw new InterruptedIOException("Timed out waiting for a free connection to " + chain.request().url().host());
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for a free connection");
+            }
+
+            try
+            {
+                return chain.proceed(chain.request());
+            }
+            finally
+            {
+                permits.release();
+            }
+        }
+    }
+}
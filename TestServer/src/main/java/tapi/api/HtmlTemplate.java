@@ -0,0 +1,93 @@
+package tapi.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One of the hand-rendered pages (see templates/getPublicKey.html etc), read and split once into its static text
+ * and [PLACEHOLDER] slots. render() then builds the page in a single pass into a buffer sized for it, rather than
+ * re-reading the file and copying the whole page once per String.replace.
+ */
+public class HtmlTemplate
+{
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\[([A-Z][A-Z_]*)\\]");
+
+    private final String[] segments; // segments[i] comes before slots[i]; the last segment has no slot after it
+    private final String[] slots;
+    private final int staticLength;
+
+    public static HtmlTemplate load(String resource) throws IOException
+    {
+        try (InputStream in = HtmlTemplate.class.getClassLoader().getResourceAsStream(resource))
+        {
+            if (in == null) throw new IOException("Template not found: " + resource);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = in.read(buffer)) != -1)
+            {
+                out.write(buffer, 0, len);
+            }
+            return new HtmlTemplate(new String(out.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+
+    public HtmlTemplate(String html)
+    {
+        List<String> segmentList = new ArrayList<>();
+        List<String> slotList = new ArrayList<>();
+        Matcher matcher = PLACEHOLDER.matcher(html);
+        int index = 0;
+        while (matcher.find())
+        {
+            segmentList.add(html.substring(index, matcher.start()));
+            slotList.add(matcher.group(1));
+            index = matcher.end();
+        }
+        segmentList.add(html.substring(index));
+
+        segments = segmentList.toArray(new String[0]);
+        slots = slotList.toArray(new String[0]);
+        int length = 0;
+        for (String segment : segments) length += segment.length();
+        staticLength = length;
+    }
+
+    /**
+     * @param values placeholder name, value, name, value ... ; placeholders not given are left as they are
+     */
+    public String render(String... values)
+    {
+        int length = staticLength;
+        for (int i = 1; i < values.length; i += 2)
+        {
+            length += values[i].length();
+        }
+
+        StringBuilder sb = new StringBuilder(length + 16);
+        for (int i = 0; i < slots.length; i++)
+        {
+            sb.append(segments[i]);
+            String value = valueOf(slots[i], values);
+            if (value != null) sb.append(value);
+            else sb.append('[').append(slots[i]).append(']');
+        }
+        sb.append(segments[segments.length - 1]);
+        return sb.toString();
+    }
+
+    private static String valueOf(String slot, String[] values)
+    {
+        for (int i = 0; i + 1 < values.length; i += 2)
+        {
+            if (values[i].equals(slot)) return values[i + 1];
+        }
+        return null;
+    }
+}
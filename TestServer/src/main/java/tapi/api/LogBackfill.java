@@ -0,0 +1,190 @@
+package tapi.api;
+
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.Log;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+
+/**
+ * Scans event logs over a block range as a series of block windows fetched in parallel.
+ *
+ * A window is halved and retried when the provider rejects it as too large (result count or block span), and the
+ * window size grows again while results come back sparse. Any other failure, including the node being unreachable,
+ * retries the same window up to MAX_RETRIES times. Windows are handed to the
+ * {@link WindowHandler} strictly in block order, so the handler can record the end of each window as a
+ * checkpoint and a restarted scan resumes from the last completed window.
+ */
+public class LogBackfill
+{
+    public interface WindowHandler
+    {
+        void onWindow(long fromBlock, long toBlock, List<Log> logs) throws Exception;
+    }
+
+    private static final int SPARSE_LOGS = 500;
+    private static final int MAX_RETRIES = 3;
+    private static final String[] TOO_LARGE_ERRORS = { "more than", "too many", "limited to", "too large", "too wide", "max results", "response size" };
+
+    private final EthereumNode node;
+    private final int concurrency;
+    private final long minWindow;
+    private final long maxWindow;
+    private final ExecutorService executor;
+    private volatile long window;
+
+    public LogBackfill(EthereumNode node, int concurrency, long initialWindow, long minWindow, long maxWindow)
+    {
+        this.node = node;
+        this.concurrency = concurrency;
+        this.minWindow = minWindow;
+        this.maxWindow = maxWindow;
+        this.window = initialWindow;
+        this.executor = Executors.newFixedThreadPool(concurrency);
+    }
+
+    /**
+     * Scan fromBlock..toBlock inclusive, passing each window's logs to the handler in block order
+     */
+    public void run(BiFunction<Long, Long, EthFilter> filterFactory, long fromBlock, long toBlock, WindowHandler handler) throws Exception
+    {
+        CompletionService<Window> completion = new ExecutorCompletionService<>(executor);
+        Deque<Window> pending = new ArrayDeque<>(); // windows that were split or need a retry, fetched before new ones
+        TreeMap<Long, Window> completed = new TreeMap<>();
+        long cursor = fromBlock;
+        long nextToDeliver = fromBlock;
+        int inFlight = 0;
+
+        while (nextToDeliver <= toBlock)
+        {
+            while (inFlight < concurrency && (!pending.isEmpty() || cursor <= toBlock))
+            {
+                Window next = pending.pollFirst();
+                if (next == null)
+                {
+                    next = new Window(cursor, Math.min(toBlock, cursor + window - 1), 0);
+                    cursor = next.to + 1;
+                }
+                final Window fetch = next;
+                completion.submit(() -> fetch(filterFactory, fetch));
+                inFlight++;
+            }
+
+            Window result = completion.take().get();
+            inFlight--;
+
+            if (result.tooLarge)
+            {
+                if (result.from == result.to)
+                {
+                    throw new IOException("Provider rejected getLogs for single block " + result.from);
+                }
+                long mid = result.from + (result.to - result.from) / 2;
+                pending.addFirst(new Window(mid + 1, result.to, 0));
+                pending.addFirst(new Window(result.from, mid, 0));
+                window = Math.max(minWindow, (result.to - result.from + 1) / 2);
+            }
+            else if (result.logs == null)
+            {
+                if (result.retries >= MAX_RETRIES)
+                {
+                    throw new IOException("getLogs failed for blocks " + result.from + "-" + result.to + ": " + result.error);
+                }
+                pending.addLast(new Window(result.from, result.to, result.retries + 1));
+            }
+            else
+            {
+                if (result.logs.size() < SPARSE_LOGS && (result.to - result.from + 1) >= window)
+                {
+                    window = Math.min(maxWindow, window * 2);
+                }
+                completed.put(result.from, result);
+
+                while (completed.containsKey(nextToDeliver))
+                {
+                    Window done = completed.remove(nextToDeliver);
+                    handler.onWindow(done.from, done.to, done.logs);
+                    nextToDeliver = done.to + 1;
+                }
+            }
+        }
+    }
+
+    public long getWindow()
+    {
+        return window;
+    }
+
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    private Window fetch(BiFunction<Long, Long, EthFilter> filterFactory, Window w)
+    {
+        try
+        {
+            EthLog ethLog = node.getWeb3j().ethGetLogs(filterFactory.apply(w.from, w.to)).send();
+            if (ethLog.hasError())
+            {
+                String message = ethLog.getError().getMessage();
+                if (isTooLarge(message)) w.tooLarge = true;
+                else w.error = message;
+                return w;
+            }
+
+            List<Log> logs = new ArrayList<>();
+            for (EthLog.LogResult<?> logResult : ethLog.getLogs())
+            {
+                logs.add((Log) logResult.get());
+            }
+            w.logs = logs;
+        }
+        catch (Exception e)
+        {
+            //connection failures and timeouts say nothing about the window size
+            w.error = e.toString();
+        }
+
+        return w;
+    }
+
+    private static boolean isTooLarge(String message)
+    {
+        if (message == null) return false;
+        String lower = message.toLowerCase(Locale.ROOT);
+        for (String marker : TOO_LARGE_ERRORS)
+        {
+            if (lower.contains(marker)) return true;
+        }
+        return false;
+    }
+
+    private static class Window
+    {
+        final long from;
+        final long to;
+        final int retries;
+        List<Log> logs;
+        boolean tooLarge;
+        String error;
+
+        Window(long from, long to, int retries)
+        {
+            this.from = from;
+            this.to = to;
+            this.retries = retries;
+        }
+    }
+}
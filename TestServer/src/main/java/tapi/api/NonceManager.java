@@ -0,0 +1,158 @@
+package tapi.api;
+
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.response.EthGetTransactionCount;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out transaction nonces for the server's own keys from memory, so several transactions from the same
+ * key can be signed and sent back to back without an eth_getTransactionCount call each, and without two
+ * concurrent sends getting the same nonce.
+ *
+ * Each sender is seeded from the node's pending count on first use. A nonce whose transaction was never accepted
+ * is released and handed out again before any new one, so it doesn't leave a gap that holds up later
+ * transactions. If the node says a nonce is too low (the key was used elsewhere) the sender is resynced; nonces
+ * the node hasn't seen below the ones still being sent are treated as a gap and reused. A send that failed after the
+ * transaction may have reached the node (eg a read timeout) can't tell which it was, so the sender is resynced from
+ * the node before its next nonce is handed out.
+ */
+public class NonceManager
+{
+    private static final String[] NONCE_USED_ERRORS = { "nonce too low", "already known", "known transaction", "replacement transaction underpriced" };
+
+    private final EthereumNode node;
+    private final Map<String, SenderNonces> senders = new ConcurrentHashMap<>();
+
+    public NonceManager(EthereumNode node)
+    {
+        this.node = node;
+    }
+
+    /**
+     * Next nonce for the sender. Pass it back to sent(), release() or unknown() once the send returns.
+     */
+    public long allocate(String address) throws IOException
+    {
+        SenderNonces sender = getSender(address);
+        synchronized (sender)
+        {
+            if (sender.next < 0) sender.next = getPendingCount(address);
+            else if (sender.stale) resync(sender, getPendingCount(address));
+            sender.stale = false;
+
+            long nonce = sender.released.isEmpty() ? sender.next++ : sender.released.pollFirst();
+            sender.inFlight.add(nonce);
+            return nonce;
+        }
+    }
+
+    /**
+     * The node accepted the transaction
+     */
+    public void sent(String address, long nonce)
+    {
+        SenderNonces sender = getSender(address);
+        synchronized (sender)
+        {
+            sender.inFlight.remove(nonce);
+        }
+    }
+
+    /**
+     * The transaction was rejected or never sent, so the nonce is still free
+     */
+    public void release(String address, long nonce)
+    {
+        SenderNonces sender = getSender(address);
+        synchronized (sender)
+        {
+            sender.inFlight.remove(nonce);
+            if (nonce < sender.next) sender.released.add(nonce);
+        }
+    }
+
+    /**
+     * The send failed in a way that leaves it unknown whether the node got the transaction; the nonce is
+     * settled by a resync before the next allocate()
+     */
+    public void unknown(String address, long nonce)
+    {
+        SenderNonces sender = getSender(address);
+        synchronized (sender)
+        {
+            sender.inFlight.remove(nonce);
+            sender.stale = true;
+        }
+    }
+
+    /**
+     * Re-read the sender's nonce from the node, after a nonce error or to pick up transactions sent elsewhere
+     */
+    public void resync(String address) throws IOException
+    {
+        long pending = getPendingCount(address);
+        SenderNonces sender = getSender(address);
+        synchronized (sender)
+        {
+            resync(sender, pending);
+            sender.stale = false;
+        }
+    }
+
+    private static void resync(SenderNonces sender, long pending)
+    {
+        sender.released.headSet(pending).clear();
+        sender.inFlight.headSet(pending).clear();
+
+        long next = sender.inFlight.isEmpty() ? pending : Math.max(pending, sender.inFlight.last() + 1);
+        long firstInFlight = sender.inFlight.isEmpty() ? next : sender.inFlight.first();
+        //nonces the node hasn't seen below the ones still being sent would hold everything up
+        for (long nonce = pending; nonce < firstInFlight && nonce < next; nonce++)
+        {
+            sender.released.add(nonce);
+        }
+        sender.released.tailSet(next).clear();
+        sender.next = next;
+    }
+
+    /**
+     * True if the node rejected a transaction because its nonce was already used
+     */
+    public static boolean isNonceUsedError(String message)
+    {
+        if (message == null) return false;
+        String lower = message.toLowerCase(Locale.ROOT);
+        for (String marker : NONCE_USED_ERRORS)
+        {
+            if (lower.contains(marker)) return true;
+        }
+        return false;
+    }
+
+    private SenderNonces getSender(String address)
+    {
+        return senders.computeIfAbsent(address.toLowerCase(Locale.ROOT), a -> new SenderNonces());
+    }
+
+    private long getPendingCount(String address) throws IOException
+    {
+        EthGetTransactionCount count = node.getWeb3j()
+                .ethGetTransactionCount(address, DefaultBlockParameterName.PENDING)
+                .send();
+        if (count.hasError()) throw new IOException("Unable to read nonce for " + address + ": " + count.getError().getMessage());
+        return count.getTransactionCount().longValue();
+    }
+
+    private static class SenderNonces
+    {
+        long next = -1; // -1 until seeded from the node
+        boolean stale; // a send may or may not have reached the node; resync before the next allocate
+        final TreeSet<Long> released = new TreeSet<>();
+        final TreeSet<Long> inFlight = new TreeSet<>();
+    }
+}
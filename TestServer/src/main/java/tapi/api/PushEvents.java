@@ -0,0 +1,74 @@
+package tapi.api;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Server-Sent Events for pages waiting on the server: a page subscribes to a key (eg a user's tip scan or a
+ * transaction hash) and gets a single event when that's ready, instead of polling. Each emitter is completed
+ * after its event; the browser's EventSource reconnects by itself if the emitter times out first.
+ */
+public class PushEvents
+{
+    private final long timeoutMillis;
+    private final Map<String, List<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+
+    public PushEvents(long timeoutMillis)
+    {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Register before checking whether the result is already there (then send() it), so an update can't be missed
+     */
+    public SseEmitter subscribe(String key)
+    {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        List<SseEmitter> emitters = subscribers.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>());
+        emitters.add(emitter);
+
+        Runnable remove = () -> {
+            emitters.remove(emitter);
+            subscribers.computeIfPresent(key, (k, list) -> list.isEmpty() ? null : list);
+        };
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        return emitter;
+    }
+
+    /**
+     * Send the event to everyone subscribed to the key and close their streams
+     */
+    public void publish(String key, String data)
+    {
+        List<SseEmitter> emitters = subscribers.remove(key);
+        if (emitters == null) return;
+
+        for (SseEmitter emitter : emitters)
+        {
+            send(emitter, data);
+        }
+    }
+
+    /**
+     * Send the event to one subscriber and close its stream
+     */
+    public void send(SseEmitter emitter, String data)
+    {
+        try
+        {
+            emitter.send(SseEmitter.event().data(data));
+            emitter.complete();
+        }
+        catch (IOException | IllegalStateException e)
+        {
+            //page has gone
+            emitter.completeWithError(e);
+        }
+    }
+}
@@ -1,11 +1,6 @@
 package tapi.api;
 
-import org.web3j.abi.FunctionReturnDecoder;
-import org.web3j.abi.datatypes.Function;
-import org.web3j.abi.datatypes.Type;
-
 import java.math.BigInteger;
-import java.util.List;
 
 public class Tip {
     final PaymentToken[] paymentTokens;
@@ -15,15 +10,25 @@ public class Tip {
     final String payee;
     final boolean completed;
 
-    public Tip(Function commitmentFunc, String result)
+    // From a getTips() batch result; offerer and identifier come from the CreateTip log, payee is only set once collected
+    public Tip(TipQuery query, String offerer, String identifier)
+    {
+        paymentTokens = query.paymentTokens;
+        weiValue = query.value.getValue();
+        this.offerer = offerer;
+        this.identifier = identifier;
+        payee = null;
+        completed = query.completed.getValue();
+    }
+
+    // Restored from the AttestationStore
+    Tip(PaymentToken[] paymentTokens, BigInteger weiValue, String offerer, String identifier, String payee, boolean completed)
     {
-        List<Type> responseValues = FunctionReturnDecoder.decode(result, commitmentFunc.getOutputParameters());
-        List<PaymentToken> pTokens = (List<PaymentToken>)responseValues.get(0).getValue();
-        paymentTokens = pTokens.toArray(new PaymentToken[0]);
-        offerer = responseValues.get(1).getValue().toString();
-        weiValue = (BigInteger) responseValues.get(2).getValue();
-        identifier = responseValues.get(3).getValue().toString();
-        payee = responseValues.get(4).getValue().toString();
-        completed = (boolean)responseValues.get(5).getValue();
+        this.paymentTokens = paymentTokens;
+        this.weiValue = weiValue;
+        this.offerer = offerer;
+        this.identifier = identifier;
+        this.payee = payee;
+        this.completed = completed;
     }
 }
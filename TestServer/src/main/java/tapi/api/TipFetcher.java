@@ -0,0 +1,84 @@
+package tapi.api;
+
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.response.EthCall;
+import org.web3j.utils.Numeric;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.web3j.protocol.core.methods.request.Transaction.createEthCallTransaction;
+
+/**
+ * Fetches status and details for any number of tips with getTips(uint256[]). The IDs are split into chunks and
+ * the eth_call for every chunk goes out in one JSON-RPC batch. The chunk size follows the size of previous
+ * results, so a single eth_call response stays around RESPONSE_TARGET_BYTES.
+ */
+public class TipFetcher
+{
+    private static final String ZERO_ADDRESS = "0x0000000000000000000000000000000000000000";
+    private static final int CHUNK_MIN = 16;
+    private static final int CHUNK_MAX = 500;
+    private static final long RESPONSE_TARGET_BYTES = 64 * 1024;
+
+    private final EthereumNode node;
+    private final String contractAddress;
+    private volatile int chunkSize = 100;
+
+    public TipFetcher(EthereumNode node, String contractAddress)
+    {
+        this.node = node;
+        this.contractAddress = contractAddress;
+    }
+
+    /**
+     * @return TipQuery for each tip ID, in the order given. IDs in a chunk the node failed to answer are left out.
+     */
+    public Map<BigInteger, TipQuery> fetchTips(List<BigInteger> tipIds) throws IOException
+    {
+        Map<BigInteger, TipQuery> tips = new LinkedHashMap<>();
+        if (tipIds.isEmpty()) return tips;
+
+        int size = chunkSize;
+        List<List<BigInteger>> chunks = new ArrayList<>();
+        List<Request<?, EthCall>> calls = new ArrayList<>();
+        for (int i = 0; i < tipIds.size(); i += size)
+        {
+            List<BigInteger> chunk = tipIds.subList(i, Math.min(i + size, tipIds.size()));
+            chunks.add(chunk);
+            calls.add(node.getWeb3j().ethCall(
+                    createEthCallTransaction(ZERO_ADDRESS, contractAddress, Numeric.toHexString(TipOfferCodec.encodeGetTips(chunk))),
+                    DefaultBlockParameterName.LATEST));
+        }
+
+        List<EthCall> results = node.sendBatch(calls);
+        long responseBytes = 0;
+        for (int i = 0; i < chunks.size(); i++)
+        {
+            EthCall call = results.get(i);
+            if (call == null || call.hasError() || call.getValue() == null) continue;
+            String result = call.getValue();
+            responseBytes += result.length() / 2;
+
+            List<BigInteger> chunk = chunks.get(i);
+            List<TipQuery> queries = TipOfferCodec.decodeTips(result);
+            for (int j = 0; j < queries.size() && j < chunk.size(); j++)
+            {
+                tips.put(chunk.get(j), queries.get(j));
+            }
+        }
+
+        if (responseBytes > 0)
+        {
+            long bytesPerTip = Math.max(1, responseBytes / tipIds.size());
+            chunkSize = (int) Math.max(CHUNK_MIN, Math.min(CHUNK_MAX, RESPONSE_TARGET_BYTES / bytesPerTip));
+        }
+
+        return tips;
+    }
+}
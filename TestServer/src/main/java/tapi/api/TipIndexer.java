@@ -0,0 +1,782 @@
+package tapi.api;
+
+import io.reactivex.Observable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import org.bouncycastle.jcajce.provider.digest.Keccak;
+import org.jetbrains.annotations.Nullable;
+import org.web3j.abi.EventEncoder;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.utils.Numeric;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows the TipOffer CreateTip, CollectTips and CancelTip events and keeps an index of
+ * keccak256(identifier) -> open tip IDs, with the offerer and a getTips() snapshot of each tip.
+ *
+ * Each pass scans from the checkpoint up to 'confirmations' blocks behind the head with a {@link LogBackfill},
+ * and the index and the last processed block are written to a checkpoint file after every completed window,
+ * so a restart (or a failed pass) resumes from the last window that was fully applied. Between passes a
+ * {@link TipLogStream} applies new events as they are mined, so while the stream is live a user's tips are
+ * served from memory.
+ *
+ * Reorgs: the hashes of the last reorgHistory scanned blocks are recorded, with a journal of the index changes
+ * made in them. Each pass checks the latest recorded hash against the node, and each newly scanned block's parent
+ * hash against the block before it. On a mismatch the changes from the orphaned blocks are undone and the scan
+ * resumes from the fork point. Stream events, which run ahead of the confirmed scan, are journaled the same way
+ * and replaced by the scan's canonical events once their blocks are confirmed.
+ *
+ * Note: TipOffer emits CollectTips with the identifier of tip 0 rather than the collected tips, so collected
+ * tips can't be matched from the log. A CollectTips event instead triggers a status refresh of all open tips
+ * (one batched getTips call), and completed tips are dropped from the index.
+ */
+public class TipIndexer
+{
+    static final String CREATE_TIP_TOPIC = EventEncoder.buildEventSignature("CreateTip(address,string,uint256)");
+    static final String COLLECT_TIPS_TOPIC = EventEncoder.buildEventSignature("CollectTips(string,address)");
+    static final String CANCEL_TIP_TOPIC = EventEncoder.buildEventSignature("CancelTip(address,string,uint256)");
+
+    private static final int CHECKPOINT_VERSION = 2;
+
+    private static final byte OP_CREATE = 0;
+    private static final byte OP_CANCEL = 1;
+    private static final byte OP_COMPLETE = 2;
+
+    private final EthereumNode node;
+    private final LogBackfill backfill;
+    private final TipFetcher tipFetcher;
+    private final String contractAddress;
+    private final File checkpointFile;
+    private final long startBlock;
+    private final long pollSeconds;
+    private final long confirmations;
+    private final int reorgHistory;
+    @Nullable
+    private TipLogStream stream;
+    @Nullable
+    private TipLedger ledger;
+
+    private final Map<String, Set<BigInteger>> openTips = new ConcurrentHashMap<>(); // identifier hash -> tip IDs
+    private final Map<BigInteger, IndexedTip> tips = new ConcurrentHashMap<>();
+    private final Set<BigInteger> needsDetails = ConcurrentHashMap.newKeySet();
+    private volatile boolean statusDirty = false;
+    private volatile boolean refreshingStatus = false; // a full refresh is fetching; the snapshots are still stale
+    private volatile long lastBlock;
+    private volatile long headBlock;
+    private volatile boolean caughtUp = false;
+
+    // Reorg tracking, both guarded by the journal lock
+    private final TreeMap<Long, String> blockHashes = new TreeMap<>();
+    private final TreeMap<Long, List<IndexOp>> journal = new TreeMap<>();
+
+    @Nullable
+    private Disposable tailDisposable;
+
+    public TipIndexer(EthereumNode node, LogBackfill backfill, TipFetcher tipFetcher, String contractAddress,
+                      File checkpointFile, long startBlock, long pollSeconds, long confirmations, int reorgHistory)
+    {
+        this.node = node;
+        this.backfill = backfill;
+        this.tipFetcher = tipFetcher;
+        this.contractAddress = contractAddress;
+        this.checkpointFile = checkpointFile;
+        this.startBlock = startBlock;
+        this.pollSeconds = pollSeconds;
+        this.confirmations = confirmations;
+        this.reorgHistory = Math.max(1, reorgHistory);
+        this.lastBlock = startBlock - 1;
+    }
+
+    /**
+     * Apply new events as they arrive, see TipLogStream. Pass a null URL to use filter polling only.
+     */
+    public void enableStreaming(@Nullable String webSocketUrl, long retrySeconds)
+    {
+        stream = new TipLogStream(node, webSocketUrl, contractAddress, this::onStreamLog, retrySeconds);
+    }
+
+    /**
+     * Also record every confirmed tip event and getTips() result in the ledger
+     */
+    public void setLedger(TipLedger ledger)
+    {
+        this.ledger = ledger;
+    }
+
+    public void start()
+    {
+        loadCheckpoint();
+        if (ledger != null)
+        {
+            try
+            {
+                //a ledger that's behind the checkpoint (eg newly created) is filled by rescanning from its last block
+                long ledgerBlock = Math.max(ledger.getLastBlock(), startBlock - 1);
+                if (ledgerBlock < lastBlock) lastBlock = ledgerBlock;
+            }
+            catch (SQLException e)
+            {
+                e.printStackTrace();
+            }
+        }
+        needsDetails.addAll(tips.keySet());
+        tailDisposable = Observable.interval(0, pollSeconds, TimeUnit.SECONDS, Schedulers.io())
+                .doOnNext(l -> tail())
+                .subscribe();
+        if (stream != null) stream.start();
+    }
+
+    public void stop()
+    {
+        if (tailDisposable != null && !tailDisposable.isDisposed())
+        {
+            tailDisposable.dispose();
+        }
+        if (stream != null) stream.stop();
+        backfill.shutdown();
+    }
+
+    /**
+     * True once the index has reached the chain head at least once, so it can answer instead of a log scan
+     */
+    public boolean isReady()
+    {
+        return caughtUp;
+    }
+
+    /**
+     * Last block of the confirmed scan
+     */
+    public long getLastBlock()
+    {
+        return lastBlock;
+    }
+
+    public long getConfirmations()
+    {
+        return confirmations;
+    }
+
+    public List<BigInteger> getOpenTipIds(String identifier)
+    {
+        Set<BigInteger> tipIds = openTips.get(identifierHash(identifier));
+        return tipIds != null ? new ArrayList<>(tipIds) : Collections.emptyList();
+    }
+
+    @Nullable
+    public String getOfferer(BigInteger tipId)
+    {
+        IndexedTip tip = tips.get(tipId);
+        return tip != null ? tip.offerer : null;
+    }
+
+    /**
+     * The user's open tips from the in-memory snapshots, with no node call.
+     * @return null unless the event stream is live, the confirmed scan has reached the block the stream started
+     * from, and every tip has a current snapshot
+     */
+    @Nullable
+    public Map<BigInteger, Tip> getCachedTips(String identifier)
+    {
+        if (!caughtUp || stream == null || !stream.isLive() || statusDirty || refreshingStatus) return null;
+        if (lastBlock < stream.getLiveFromBlock()) return null; // tips from before the subscription aren't all in yet
+
+        Map<BigInteger, Tip> result = new HashMap<>();
+        for (BigInteger tipId : getOpenTipIds(identifier))
+        {
+            IndexedTip tip = tips.get(tipId);
+            if (tip == null || tip.details == null || needsDetails.contains(tipId)) return null;
+            if (!tip.details.completed.getValue())
+            {
+                result.put(tipId, new Tip(tip.details, tip.offerer, identifier));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Drop tips found to be collected or cancelled
+     */
+    public void removeTips(String identifier, Iterable<BigInteger> tipIds)
+    {
+        String idHash = identifierHash(identifier);
+        for (BigInteger tipId : tipIds)
+        {
+            IndexedTip tip = tips.get(tipId);
+            if (tip != null) journalOp(headBlock, null, OP_COMPLETE, idHash, tipId, tip.offerer);
+        }
+        removeByHash(idHash, tipIds);
+    }
+
+    private void removeByHash(String idHash, Iterable<BigInteger> tipIds)
+    {
+        Set<BigInteger> open = openTips.get(idHash);
+        for (BigInteger tipId : tipIds)
+        {
+            if (open != null) open.remove(tipId);
+            tips.remove(tipId);
+            needsDetails.remove(tipId);
+        }
+    }
+
+    public static String identifierHash(String identifier)
+    {
+        //logs encode indexed strings as their keccak256 hash
+        Keccak.Digest256 digest = new Keccak.Digest256();
+        return Numeric.toHexString(digest.digest(identifier.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void tail()
+    {
+        try
+        {
+            long head = node.getWeb3j().ethBlockNumber().send().getBlockNumber().longValue();
+            headBlock = Math.max(headBlock, head);
+            checkForReorg();
+
+            long target = head - confirmations;
+            if (target > lastBlock)
+            {
+                long fromBlock = lastBlock + 1;
+                long historyStart = Math.max(fromBlock, target - reorgHistory + 1);
+                //stream events in these blocks are replaced by the canonical events from the scan
+                undo(lastBlock, target, true);
+
+                backfill.run(this::getTipEventsFilter, fromBlock, target, (from, to, logs) -> {
+                    for (Log log : logs)
+                    {
+                        applyLog(log, log.getBlockNumber().longValue() >= historyStart);
+                    }
+                    if (ledger != null) ledger.recordLogs(logs, to);
+                    lastBlock = to;
+                    saveCheckpoint();
+                });
+
+                recordBlockHashes(historyStart, target);
+            }
+            caughtUp = true;
+            refreshDetails();
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    private void onStreamLog(Log log)
+    {
+        if (log.getBlockNumberRaw() == null) return; // still pending
+
+        long block = log.getBlockNumber().longValue();
+        headBlock = Math.max(headBlock, block);
+        if (log.isRemoved())
+        {
+            //the node reports this log's block was orphaned
+            undoLog(log);
+            statusDirty = true;
+        }
+        else if (block > lastBlock)
+        {
+            applyLog(log, true);
+        }
+
+        try
+        {
+            refreshDetails();
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    private EthFilter getTipEventsFilter(long fromBlock, long toBlock)
+    {
+        return new EthFilter(
+                DefaultBlockParameter.valueOf(BigInteger.valueOf(fromBlock)),
+                DefaultBlockParameter.valueOf(BigInteger.valueOf(toBlock)),
+                contractAddress)
+                .addOptionalTopics(CREATE_TIP_TOPIC, COLLECT_TIPS_TOPIC, CANCEL_TIP_TOPIC);
+    }
+
+    void applyLog(Log log, boolean journaled)
+    {
+        List<String> topics = log.getTopics();
+        if (topics == null || topics.isEmpty()) return;
+        String topic = topics.get(0);
+
+        if (topic.equalsIgnoreCase(COLLECT_TIPS_TOPIC))
+        {
+            statusDirty = true; // see class comment
+            return;
+        }
+        if (topics.size() < 4) return;
+
+        String offerer = "0x" + topics.get(1).substring(26);
+        String idHash = topics.get(2).toLowerCase();
+        BigInteger tipId = Numeric.toBigInt(topics.get(3));
+        long block = log.getBlockNumber().longValue();
+
+        if (topic.equalsIgnoreCase(CREATE_TIP_TOPIC))
+        {
+            if (journaled) journalOp(block, log.getBlockHash(), OP_CREATE, idHash, tipId, offerer);
+            addTip(idHash, tipId, offerer);
+            needsDetails.add(tipId);
+        }
+        else if (topic.equalsIgnoreCase(CANCEL_TIP_TOPIC))
+        {
+            if (journaled) journalOp(block, log.getBlockHash(), OP_CANCEL, idHash, tipId, offerer);
+            removeByHash(idHash, Collections.singletonList(tipId));
+        }
+    }
+
+    private void addTip(String idHash, BigInteger tipId, String offerer)
+    {
+        if (!tips.containsKey(tipId))
+        {
+            tips.put(tipId, new IndexedTip(idHash, offerer));
+        }
+        openTips.computeIfAbsent(idHash, k -> ConcurrentHashMap.newKeySet()).add(tipId);
+    }
+
+    // Load getTips() snapshots for new tips, or for all open tips after a CollectTips event
+    private synchronized void refreshDetails() throws IOException
+    {
+        boolean refreshAll = statusDirty;
+        //cleared now so a CollectTips seen during the fetch marks it again; refreshingStatus covers the gap
+        refreshingStatus = refreshAll;
+        statusDirty = false;
+        try
+        {
+            refreshDetails(refreshAll);
+        }
+        finally
+        {
+            refreshingStatus = false;
+        }
+    }
+
+    private void refreshDetails(boolean refreshAll) throws IOException
+    {
+        List<BigInteger> tipIds = new ArrayList<>(refreshAll ? tips.keySet() : needsDetails);
+        if (tipIds.isEmpty()) return;
+
+        Map<BigInteger, TipQuery> details;
+        try
+        {
+            details = tipFetcher.fetchTips(tipIds);
+        }
+        catch (IOException e)
+        {
+            statusDirty |= refreshAll;
+            throw e;
+        }
+
+        if (ledger != null)
+        {
+            try
+            {
+                ledger.recordDetails(details);
+            }
+            catch (SQLException e)
+            {
+                e.printStackTrace();
+            }
+        }
+
+        for (Map.Entry<BigInteger, TipQuery> entry : details.entrySet())
+        {
+            IndexedTip tip = tips.get(entry.getKey());
+            if (tip == null) continue;
+            if (entry.getValue().completed.getValue())
+            {
+                journalOp(headBlock, null, OP_COMPLETE, tip.idHash, entry.getKey(), tip.offerer);
+                removeByHash(tip.idHash, Collections.singletonList(entry.getKey()));
+            }
+            else
+            {
+                tip.details = entry.getValue();
+                needsDetails.remove(entry.getKey());
+            }
+        }
+    }
+
+    /***********************************
+     * Reorg handling
+     ***********************************/
+
+    private void journalOp(long block, @Nullable String blockHash, byte type, String idHash, BigInteger tipId, String offerer)
+    {
+        synchronized (journal)
+        {
+            journal.computeIfAbsent(block, b -> new ArrayList<>()).add(new IndexOp(blockHash, type, idHash, tipId, offerer));
+        }
+    }
+
+    // Undo the index changes journaled for blocks in (afterBlock, toBlock], latest first.
+    // eventsOnly leaves collected tips found by status refreshes alone, they don't come back from a rescan
+    private void undo(long afterBlock, long toBlock, boolean eventsOnly)
+    {
+        if (toBlock <= afterBlock) return;
+        synchronized (journal)
+        {
+            NavigableMap<Long, List<IndexOp>> orphaned = journal.subMap(afterBlock, false, toBlock, true);
+            for (Iterator<List<IndexOp>> blocks = orphaned.descendingMap().values().iterator(); blocks.hasNext(); )
+            {
+                List<IndexOp> ops = blocks.next();
+                for (int i = ops.size() - 1; i >= 0; i--)
+                {
+                    if (eventsOnly && ops.get(i).type == OP_COMPLETE) continue;
+                    undoOp(ops.remove(i));
+                }
+                if (ops.isEmpty()) blocks.remove();
+            }
+            blockHashes.subMap(afterBlock, false, toBlock, true).clear();
+        }
+    }
+
+    private void undoOp(IndexOp op)
+    {
+        if (op.type == OP_CREATE)
+        {
+            removeByHash(op.idHash, Collections.singletonList(op.tipId));
+        }
+        else
+        {
+            //cancelled or collected in an orphaned block; the tip is open again unless the refresh says otherwise
+            addTip(op.idHash, op.tipId, op.offerer);
+            needsDetails.add(op.tipId);
+        }
+    }
+
+    private void undoLog(Log log)
+    {
+        List<String> topics = log.getTopics();
+        if (topics == null || topics.size() < 4) return;
+        BigInteger tipId = Numeric.toBigInt(topics.get(3));
+        synchronized (journal)
+        {
+            List<IndexOp> ops = journal.get(log.getBlockNumber().longValue());
+            if (ops == null) return;
+            for (Iterator<IndexOp> it = ops.iterator(); it.hasNext(); )
+            {
+                IndexOp op = it.next();
+                if (op.tipId.equals(tipId) && op.type != OP_COMPLETE)
+                {
+                    undoOp(op);
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Roll the index back to the fork point after a reorg, so the next scan picks up the new canonical blocks
+     */
+    private void rollbackTo(long forkBlock) throws IOException
+    {
+        System.out.println("Tip index: reorg detected, rolling back to block " + forkBlock);
+        undo(forkBlock, Long.MAX_VALUE, false);
+        if (lastBlock > forkBlock) lastBlock = forkBlock;
+        statusDirty = true;
+        if (ledger != null)
+        {
+            try
+            {
+                ledger.rollbackTo(forkBlock);
+            }
+            catch (SQLException e)
+            {
+                e.printStackTrace();
+            }
+        }
+        saveCheckpoint();
+    }
+
+    // See if the latest recorded block is still canonical; if not, find where the chains diverge
+    private void checkForReorg() throws IOException
+    {
+        TreeMap<Long, String> recorded; // latest first
+        synchronized (journal)
+        {
+            if (blockHashes.isEmpty()) return;
+            recorded = new TreeMap<>(blockHashes.descendingMap());
+        }
+
+        Map.Entry<Long, String> latest = recorded.firstEntry();
+        EthBlock.Block block = node.getWeb3j().ethGetBlockByNumber(DefaultBlockParameter.valueOf(BigInteger.valueOf(latest.getKey())), false)
+                .send().getBlock();
+        if (block == null || block.getHash().equalsIgnoreCase(latest.getValue())) return;
+
+        Map<Long, EthBlock.Block> headers = fetchHeaders(new ArrayList<>(recorded.keySet()));
+        long oldest = recorded.lastKey();
+        long forkBlock = oldest - 1;
+        for (Map.Entry<Long, String> entry : recorded.entrySet())
+        {
+            EthBlock.Block header = headers.get(entry.getKey());
+            if (header != null && header.getHash().equalsIgnoreCase(entry.getValue()))
+            {
+                forkBlock = entry.getKey();
+                break;
+            }
+        }
+
+        if (forkBlock < oldest)
+        {
+            System.out.println("Tip index: reorg is deeper than the " + reorgHistory + " block history, changes before block "
+                    + oldest + " can't be undone");
+        }
+        rollbackTo(forkBlock);
+    }
+
+    // Record the hashes of newly scanned blocks, checking each links to its parent and matches the logs applied from it
+    private void recordBlockHashes(long fromBlock, long toBlock) throws IOException
+    {
+        List<Long> numbers = new ArrayList<>();
+        for (long n = fromBlock; n <= toBlock; n++) numbers.add(n);
+        if (numbers.isEmpty()) return;
+
+        Map<Long, EthBlock.Block> headers = fetchHeaders(numbers);
+        for (long n : numbers)
+        {
+            EthBlock.Block header = headers.get(n);
+            if (header == null) throw new IOException("Missing header for block " + n);
+
+            boolean parentMatches;
+            boolean matches;
+            synchronized (journal)
+            {
+                String parentHash = blockHashes.get(n - 1);
+                parentMatches = parentHash == null || parentHash.equalsIgnoreCase(header.getParentHash());
+                matches = parentMatches;
+                List<IndexOp> ops = journal.get(n);
+                if (matches && ops != null)
+                {
+                    for (IndexOp op : ops)
+                    {
+                        if (op.blockHash != null && !op.blockHash.equalsIgnoreCase(header.getHash())) matches = false;
+                    }
+                }
+                if (matches)
+                {
+                    blockHashes.put(n, header.getHash());
+                    //only keep the last reorgHistory blocks
+                    while (blockHashes.size() > reorgHistory) blockHashes.pollFirstEntry();
+                    journal.headMap(blockHashes.firstKey(), false).clear();
+                }
+            }
+
+            if (!matches)
+            {
+                //the chain changed during the scan. If block n-1 was orphaned too, go back to the last block still
+                //on the chain; either way block n and on are scanned again
+                if (!parentMatches) checkForReorg();
+                if (lastBlock >= n) rollbackTo(n - 1);
+                return;
+            }
+        }
+        saveCheckpoint();
+    }
+
+    private Map<Long, EthBlock.Block> fetchHeaders(List<Long> numbers) throws IOException
+    {
+        List<Request<?, EthBlock>> requests = new ArrayList<>();
+        for (long n : numbers)
+        {
+            requests.add(node.getWeb3j().ethGetBlockByNumber(DefaultBlockParameter.valueOf(BigInteger.valueOf(n)), false));
+        }
+
+        Map<Long, EthBlock.Block> headers = new HashMap<>();
+        List<EthBlock> results = node.sendBatch(requests);
+        for (int i = 0; i < numbers.size(); i++)
+        {
+            EthBlock result = results.get(i);
+            if (result != null && !result.hasError() && result.getBlock() != null)
+            {
+                headers.put(numbers.get(i), result.getBlock());
+            }
+        }
+        return headers;
+    }
+
+    private static class IndexedTip
+    {
+        final String idHash;
+        final String offerer;
+        @Nullable
+        volatile TipQuery details;
+
+        IndexedTip(String idHash, String offerer)
+        {
+            this.idHash = idHash;
+            this.offerer = offerer;
+        }
+    }
+
+    // A change made to the index in a recent block, kept so it can be undone if the block is orphaned
+    private static class IndexOp
+    {
+        @Nullable
+        final String blockHash; // null for tips found collected by a status refresh
+        final byte type;
+        final String idHash;
+        final BigInteger tipId;
+        final String offerer;
+
+        IndexOp(@Nullable String blockHash, byte type, String idHash, BigInteger tipId, String offerer)
+        {
+            this.blockHash = blockHash;
+            this.type = type;
+            this.idHash = idHash;
+            this.tipId = tipId;
+            this.offerer = offerer;
+        }
+    }
+
+    /***********************************
+     * Checkpoint file
+     ***********************************/
+
+    private void loadCheckpoint()
+    {
+        if (!checkpointFile.exists()) return;
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(checkpointFile)))
+        {
+            int version = in.readInt();
+            if (version < 1 || version > CHECKPOINT_VERSION) return;
+            long block = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++)
+            {
+                String idHash = in.readUTF();
+                BigInteger tipId = new BigInteger(in.readUTF());
+                String offerer = in.readUTF();
+                addTip(idHash, tipId, offerer);
+            }
+
+            if (version >= 2)
+            {
+                int hashCount = in.readInt();
+                for (int i = 0; i < hashCount; i++)
+                {
+                    blockHashes.put(in.readLong(), in.readUTF());
+                }
+                int opCount = in.readInt();
+                for (int i = 0; i < opCount; i++)
+                {
+                    long opBlock = in.readLong();
+                    String blockHash = in.readUTF();
+                    byte type = in.readByte();
+                    String idHash = in.readUTF();
+                    BigInteger tipId = new BigInteger(in.readUTF());
+                    journalOp(opBlock, blockHash.isEmpty() ? null : blockHash, type, idHash, tipId, in.readUTF());
+                }
+            }
+
+            lastBlock = block;
+            System.out.println("Tip index: restored " + count + " open tips at block " + block);
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+            openTips.clear();
+            tips.clear();
+            blockHashes.clear();
+            journal.clear();
+        }
+    }
+
+    private void saveCheckpoint() throws IOException
+    {
+        File parent = checkpointFile.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) parent.mkdirs();
+        File tmp = new File(checkpointFile.getPath() + ".tmp");
+
+        List<String[]> entries = new ArrayList<>();
+        for (Map.Entry<String, Set<BigInteger>> entry : openTips.entrySet())
+        {
+            for (BigInteger tipId : entry.getValue())
+            {
+                String offerer = getOfferer(tipId);
+                entries.add(new String[] { entry.getKey(), tipId.toString(), offerer != null ? offerer : "" });
+            }
+        }
+
+        Map<Long, String> hashes;
+        Map<Long, List<IndexOp>> ops = new TreeMap<>();
+        int opCount = 0;
+        synchronized (journal)
+        {
+            hashes = new TreeMap<>(blockHashes);
+            for (Map.Entry<Long, List<IndexOp>> entry : journal.entrySet())
+            {
+                ops.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+                opCount += entry.getValue().size();
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp)))
+        {
+            out.writeInt(CHECKPOINT_VERSION);
+            out.writeLong(lastBlock);
+            out.writeInt(entries.size());
+            for (String[] entry : entries)
+            {
+                out.writeUTF(entry[0]);
+                out.writeUTF(entry[1]);
+                out.writeUTF(entry[2]);
+            }
+
+            out.writeInt(hashes.size());
+            for (Map.Entry<Long, String> entry : hashes.entrySet())
+            {
+                out.writeLong(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+
+            out.writeInt(opCount);
+            for (Map.Entry<Long, List<IndexOp>> entry : ops.entrySet())
+            {
+                for (IndexOp op : entry.getValue())
+                {
+                    out.writeLong(entry.getKey());
+                    out.writeUTF(op.blockHash != null ? op.blockHash : "");
+                    out.writeByte(op.type);
+                    out.writeUTF(op.idHash);
+                    out.writeUTF(op.tipId.toString());
+                    out.writeUTF(op.offerer);
+                }
+            }
+        }
+
+        Files.move(tmp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
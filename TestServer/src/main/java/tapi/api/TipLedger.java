@@ -0,0 +1,343 @@
+package tapi.api;
+
+import com.google.gson.Gson;
+import org.jetbrains.annotations.Nullable;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.utils.Numeric;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local SQLite record of every TipOffer tip, filled by the TipIndexer from CreateTip/CancelTip events and
+ * getTips() results, so tips can be listed by recipient, by offerer or by status without going to the node.
+ *
+ * Recipients are stored as keccak256(identifier) since that's all the CreateTip event carries. The ledger follows
+ * the indexer's confirmed scan, and entries from blocks orphaned by a reorg are rolled back.
+ * Lists are paged on tip ID: pass the last tip ID of the previous page as 'after'.
+ */
+public class TipLedger
+{
+    public static final int STATUS_OPEN = 0;
+    public static final int STATUS_COLLECTED = 1;
+    public static final int STATUS_CANCELLED = 2;
+
+    private static final String TIP_COLUMNS = "tip_id, identifier_hash, offerer, wei_value, payment_tokens, status, block_number, tx_hash";
+
+    private final Connection connection;
+    private final Gson gson = new Gson();
+
+    public TipLedger(File ledgerFile) throws SQLException
+    {
+        File parent = ledgerFile.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) parent.mkdirs();
+
+        try
+        {
+            Class.forName("org.sqlite.JDBC");
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw new SQLException("sqlite-jdbc driver not found", e);
+        }
+
+        connection = DriverManager.getConnection("jdbc:sqlite:" + ledgerFile.getPath());
+        try (Statement statement = connection.createStatement())
+        {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS tips (" +
+                    "tip_id INTEGER PRIMARY KEY, " +
+                    "identifier_hash TEXT NOT NULL, " +
+                    "offerer TEXT NOT NULL, " +
+                    "wei_value TEXT, " +
+                    "payment_tokens TEXT, " +
+                    "status INTEGER NOT NULL DEFAULT 0, " +
+                    "block_number INTEGER, " +
+                    "tx_hash TEXT, " +
+                    "cancel_block INTEGER)");
+            addColumnIfMissing(statement, "tips", "cancel_block", "INTEGER");
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS tips_identifier ON tips (identifier_hash, status, tip_id)");
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS tips_offerer ON tips (offerer, tip_id)");
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS tips_status ON tips (status, tip_id)");
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS ledger_state (name TEXT PRIMARY KEY, value INTEGER)");
+        }
+    }
+
+    private static void addColumnIfMissing(Statement statement, String table, String column, String type) throws SQLException
+    {
+        try (ResultSet rs = statement.executeQuery("PRAGMA table_info(" + table + ")"))
+        {
+            while (rs.next())
+            {
+                if (column.equals(rs.getString("name"))) return;
+            }
+        }
+        statement.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column + " " + type);
+    }
+
+    public synchronized void close()
+    {
+        try
+        {
+            connection.close();
+        }
+        catch (SQLException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /***********************************
+     * Updates from the TipIndexer
+     ***********************************/
+
+    /**
+     * Last block whose events have all been recorded, or -1 if none
+     */
+    public synchronized long getLastBlock() throws SQLException
+    {
+        try (PreparedStatement query = connection.prepareStatement("SELECT value FROM ledger_state WHERE name = 'lastBlock'");
+             ResultSet rs = query.executeQuery())
+        {
+            return rs.next() ? rs.getLong(1) : -1;
+        }
+    }
+
+    /**
+     * Record a block range of tip events in one transaction, and move lastBlock on when it's given.
+     * Only confirmed blocks are recorded, rescanning a range is harmless
+     */
+    public synchronized void recordLogs(List<Log> logs, @Nullable Long lastBlock) throws SQLException
+    {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement create = connection.prepareStatement(
+                     "INSERT OR IGNORE INTO tips (tip_id, identifier_hash, offerer, status, block_number, tx_hash) VALUES (?, ?, ?, 0, ?, ?)");
+             PreparedStatement cancel = connection.prepareStatement("UPDATE tips SET status = " + STATUS_CANCELLED + ", cancel_block = ? WHERE tip_id = ?");
+             PreparedStatement block = connection.prepareStatement("INSERT OR REPLACE INTO ledger_state (name, value) VALUES ('lastBlock', ?)"))
+        {
+            for (Log log : logs)
+            {
+                List<String> topics = log.getTopics();
+                if (topics == null || topics.size() < 4) continue;
+                long tipId = Numeric.toBigInt(topics.get(3)).longValue();
+
+                if (topics.get(0).equalsIgnoreCase(TipIndexer.CREATE_TIP_TOPIC))
+                {
+                    create.setLong(1, tipId);
+                    create.setString(2, topics.get(2).toLowerCase());
+                    create.setString(3, "0x" + topics.get(1).substring(26).toLowerCase());
+                    create.setLong(4, log.getBlockNumber().longValue());
+                    create.setString(5, log.getTransactionHash());
+                    create.addBatch();
+                }
+                else if (topics.get(0).equalsIgnoreCase(TipIndexer.CANCEL_TIP_TOPIC))
+                {
+                    cancel.setLong(1, log.getBlockNumber().longValue());
+                    cancel.setLong(2, tipId);
+                    cancel.addBatch();
+                }
+            }
+            create.executeBatch();
+            cancel.executeBatch();
+
+            if (lastBlock != null)
+            {
+                block.setLong(1, lastBlock);
+                block.executeUpdate();
+            }
+            connection.commit();
+        }
+        catch (SQLException e)
+        {
+            connection.rollback();
+            throw e;
+        }
+        finally
+        {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Undo everything recorded from blocks after forkBlock, which a reorg has orphaned
+     */
+    public synchronized void rollbackTo(long forkBlock) throws SQLException
+    {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement created = connection.prepareStatement("DELETE FROM tips WHERE block_number > ?");
+             PreparedStatement cancelled = connection.prepareStatement(
+                     "UPDATE tips SET status = " + STATUS_OPEN + ", cancel_block = NULL WHERE cancel_block > ?");
+             PreparedStatement block = connection.prepareStatement(
+                     "UPDATE ledger_state SET value = ? WHERE name = 'lastBlock' AND value > ?"))
+        {
+            created.setLong(1, forkBlock);
+            created.executeUpdate();
+            cancelled.setLong(1, forkBlock);
+            cancelled.executeUpdate();
+            block.setLong(1, forkBlock);
+            block.setLong(2, forkBlock);
+            block.executeUpdate();
+            connection.commit();
+        }
+        catch (SQLException e)
+        {
+            connection.rollback();
+            throw e;
+        }
+        finally
+        {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Record getTips() results: the tip values, and collected status for completed tips not cancelled.
+     * A collected tip that shows as open again (its collection was orphaned) goes back to open.
+     */
+    public synchronized void recordDetails(Map<BigInteger, TipQuery> details) throws SQLException
+    {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement update = connection.prepareStatement(
+                "UPDATE tips SET wei_value = ?, payment_tokens = ?, " +
+                "status = CASE WHEN ? THEN (CASE WHEN status = " + STATUS_OPEN + " THEN " + STATUS_COLLECTED + " ELSE status END) " +
+                "WHEN status = " + STATUS_COLLECTED + " THEN " + STATUS_OPEN + " ELSE status END " +
+                "WHERE tip_id = ?"))
+        {
+            for (Map.Entry<BigInteger, TipQuery> entry : details.entrySet())
+            {
+                TipQuery query = entry.getValue();
+                List<LedgerToken> tokens = new ArrayList<>();
+                for (PaymentToken token : query.paymentTokens)
+                {
+                    tokens.add(new LedgerToken(token.address.toString(), token.value.getValue().toString()));
+                }
+                update.setString(1, query.value.getValue().toString());
+                update.setString(2, gson.toJson(tokens));
+                update.setBoolean(3, query.completed.getValue());
+                update.setLong(4, entry.getKey().longValue());
+                update.addBatch();
+            }
+            update.executeBatch();
+            connection.commit();
+        }
+        catch (SQLException e)
+        {
+            connection.rollback();
+            throw e;
+        }
+        finally
+        {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /***********************************
+     * Queries
+     ***********************************/
+
+    public synchronized List<LedgerTip> getTipsForRecipient(String identifierHash, boolean openOnly, long after, int limit) throws SQLException
+    {
+        try (PreparedStatement query = connection.prepareStatement("SELECT " + TIP_COLUMNS + " FROM tips " +
+                "WHERE identifier_hash = ? " + (openOnly ? "AND status = " + STATUS_OPEN + " " : "") +
+                "AND tip_id > ? ORDER BY tip_id LIMIT ?"))
+        {
+            query.setString(1, identifierHash.toLowerCase());
+            query.setLong(2, after);
+            query.setInt(3, limit);
+            return readTips(query);
+        }
+    }
+
+    public synchronized List<LedgerTip> getTipsFromOfferer(String offerer, long after, int limit) throws SQLException
+    {
+        try (PreparedStatement query = connection.prepareStatement("SELECT " + TIP_COLUMNS + " FROM tips " +
+                "WHERE offerer = ? AND tip_id > ? ORDER BY tip_id LIMIT ?"))
+        {
+            query.setString(1, offerer.toLowerCase());
+            query.setLong(2, after);
+            query.setInt(3, limit);
+            return readTips(query);
+        }
+    }
+
+    public synchronized List<LedgerTip> getOpenTips(long after, int limit) throws SQLException
+    {
+        try (PreparedStatement query = connection.prepareStatement("SELECT " + TIP_COLUMNS + " FROM tips " +
+                "WHERE status = " + STATUS_OPEN + " AND tip_id > ? ORDER BY tip_id LIMIT ?"))
+        {
+            query.setLong(1, after);
+            query.setInt(2, limit);
+            return readTips(query);
+        }
+    }
+
+    private List<LedgerTip> readTips(PreparedStatement query) throws SQLException
+    {
+        List<LedgerTip> tips = new ArrayList<>();
+        try (ResultSet rs = query.executeQuery())
+        {
+            while (rs.next())
+            {
+                LedgerTip tip = new LedgerTip();
+                tip.tipId = rs.getLong(1);
+                tip.identifierHash = rs.getString(2);
+                tip.offerer = rs.getString(3);
+                tip.weiValue = rs.getString(4);
+                String tokens = rs.getString(5);
+                tip.paymentTokens = tokens != null ? gson.fromJson(tokens, LedgerToken[].class) : null;
+                switch (rs.getInt(6))
+                {
+                    case STATUS_COLLECTED:
+                        tip.status = "collected";
+                        break;
+                    case STATUS_CANCELLED:
+                        tip.status = "cancelled";
+                        break;
+                    default:
+                        tip.status = "open";
+                        break;
+                }
+                tip.blockNumber = rs.getLong(7);
+                tip.txHash = rs.getString(8);
+                tips.add(tip);
+            }
+        }
+        return tips;
+    }
+
+    // JSON row for the ledger endpoints. weiValue and paymentTokens are null until the tip's details are loaded
+    public static class LedgerTip
+    {
+        long tipId;
+        String identifierHash;
+        String offerer;
+        String weiValue;
+        LedgerToken[] paymentTokens;
+        String status;
+        long blockNumber;
+        String txHash;
+    }
+
+    public static class LedgerToken
+    {
+        final String address;
+        final String value;
+
+        LedgerToken(String address, String value)
+        {
+            this.address = address;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package tapi.api;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.web3j.crypto.Hash;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.math.BigInteger;
+
+/**
+ * Reads CreateTip logs for an identifier straight off the eth_getLogs response stream. Each log's offerer and
+ * tip ID are taken from the topic hex as it's parsed and handed to the caller, so neither the full log list nor
+ * web3j's Log/EventValues objects are ever built - a popular identifier can have thousands of logs.
+ *
+ *   CreateTip(address indexed offerer, string indexed identifier, uint256 indexed tipId)
+ *   topics: [event signature, offerer, keccak256(identifier), tipId]
+ */
+public class TipLogReader
+{
+    public static final String CREATE_TIP_TOPIC = Hash.sha3String("CreateTip(address,string,uint256)");
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    public interface CreateTipHandler
+    {
+        void onCreateTip(BigInteger tipId, String offerer);
+    }
+
+    private final EthereumNode node;
+    private final String contractAddress;
+
+    public TipLogReader(EthereumNode node, String contractAddress)
+    {
+        this.node = node;
+        this.contractAddress = contractAddress;
+    }
+
+    /**
+     * Every CreateTip log for the identifier from the start of the chain
+     * @param identifierTopic keccak256 of the identifier, 0x-prefixed hex
+     */
+    public void readCreateTips(String identifierTopic, CreateTipHandler handler) throws IOException
+    {
+        Request request = new Request.Builder()
+                .url(node.getNodeUrl())
+                .post(RequestBody.create(getLogsRequest(identifierTopic), JSON))
+                .build();
+
+        try (Response response = node.getHttpClient().newCall(request).execute())
+        {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) throw new IOException("eth_getLogs failed: " + response.code());
+
+            readCreateTips(body.charStream(), handler);
+        }
+    }
+
+    /**
+     * Parse an eth_getLogs JSON-RPC response as it's read
+     */
+    static void readCreateTips(Reader in, CreateTipHandler handler) throws IOException
+    {
+        try (JsonReader reader = new JsonReader(in))
+        {
+            reader.beginObject();
+            while (reader.hasNext())
+            {
+                switch (reader.nextName())
+                {
+                    case "result":
+                        readLogs(reader, handler);
+                        break;
+                    case "error":
+                        throw new IOException("eth_getLogs error: " + readError(reader));
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        }
+    }
+
+    private String getLogsRequest(String identifierTopic) throws IOException
+    {
+        StringWriter out = new StringWriter();
+        JsonWriter writer = new JsonWriter(out);
+        writer.beginObject()
+                .name("jsonrpc").value("2.0")
+                .name("id").value(1)
+                .name("method").value("eth_getLogs")
+                .name("params").beginArray()
+                .beginObject()
+                .name("fromBlock").value("earliest")
+                .name("toBlock").value("latest")
+                .name("address").value(contractAddress)
+                .name("topics").beginArray()
+                .value(CREATE_TIP_TOPIC)
+                .nullValue() // any offerer
+                .value(identifierTopic)
+                .endArray()
+                .endObject()
+                .endArray()
+                .endObject();
+        writer.close();
+        return out.toString();
+    }
+
+    private static void readLogs(JsonReader reader, CreateTipHandler handler) throws IOException
+    {
+        if (reader.peek() == JsonToken.NULL)
+        {
+            reader.nextNull();
+            return;
+        }
+
+        reader.beginArray();
+        while (reader.hasNext())
+        {
+            String offererTopic = null;
+            String tipIdTopic = null;
+            boolean removed = false;
+
+            reader.beginObject();
+            while (reader.hasNext())
+            {
+                switch (reader.nextName())
+                {
+                    case "topics":
+                        reader.beginArray();
+                        for (int i = 0; reader.hasNext(); i++)
+                        {
+                            String topic = reader.nextString();
+                            if (i == 1) offererTopic = topic;
+                            else if (i == 3) tipIdTopic = topic;
+                        }
+                        reader.endArray();
+                        break;
+                    case "removed":
+                        removed = reader.nextBoolean();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+
+            if (removed || offererTopic == null || tipIdTopic == null) continue;
+            //address is the low 20 bytes of the topic word
+            String offerer = "0x" + offererTopic.substring(offererTopic.length() - 40);
+            BigInteger tipId = new BigInteger(tipIdTopic.substring(2), 16);
+            handler.onCreateTip(tipId, offerer);
+        }
+        reader.endArray();
+    }
+
+    private static String readError(JsonReader reader) throws IOException
+    {
+        String message = "unknown";
+        reader.beginObject();
+        while (reader.hasNext())
+        {
+            if (reader.nextName().equals("message")) message = reader.nextString();
+            else reader.skipValue();
+        }
+        reader.endObject();
+        return message;
+    }
+}
@@ -0,0 +1,166 @@
+package tapi.api;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import org.jetbrains.annotations.Nullable;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.EthSubscribe;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.protocol.websocket.WebSocketService;
+import org.web3j.protocol.websocket.events.Notification;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams new TipOffer logs as they are mined. Uses an eth_subscribe("logs") WebSocket subscription when the
+ * provider supports it, otherwise falls back to eth_newFilter + eth_getFilterChanges polling over HTTP.
+ * Either way logs keep their removed flag, set when the node drops them from an orphaned block.
+ * On error the stream is torn down and reconnected after a delay; logs missed meanwhile are picked up by the
+ * TipIndexer tail pass.
+ *
+ * The stream only delivers logs from blocks mined after it subscribed, so the head at each (re)subscribe is
+ * recorded: logs up to that block have to come from the confirmed scan.
+ */
+public class TipLogStream
+{
+    public interface LogListener
+    {
+        void onLog(Log log);
+    }
+
+    private final EthereumNode node;
+    @Nullable
+    private final String webSocketUrl;
+    private final String contractAddress;
+    private final LogListener listener;
+    private final long retrySeconds;
+
+    @Nullable
+    private Web3j webSocketWeb3j;
+    @Nullable
+    private Disposable subscription;
+    private volatile boolean live = false;
+    private volatile long liveFromBlock = Long.MAX_VALUE;
+    private volatile boolean stopped = false;
+
+    public TipLogStream(EthereumNode node, @Nullable String webSocketUrl, String contractAddress, LogListener listener, long retrySeconds)
+    {
+        this.node = node;
+        this.webSocketUrl = webSocketUrl;
+        this.contractAddress = contractAddress;
+        this.listener = listener;
+        this.retrySeconds = retrySeconds;
+    }
+
+    public void start()
+    {
+        stopped = false;
+        connect();
+    }
+
+    public void stop()
+    {
+        stopped = true;
+        disconnect();
+    }
+
+    /**
+     * True while a subscription or filter is delivering logs
+     */
+    public boolean isLive()
+    {
+        return live;
+    }
+
+    /**
+     * The head block when the stream last subscribed; logs in this block or earlier weren't delivered by it
+     */
+    public long getLiveFromBlock()
+    {
+        return liveFromBlock;
+    }
+
+    private synchronized void connect()
+    {
+        if (stopped) return;
+
+        Flowable<Log> logs = null;
+        if (webSocketUrl != null)
+        {
+            try
+            {
+                WebSocketService webSocket = new WebSocketService(webSocketUrl, false);
+                webSocket.connect();
+                webSocketWeb3j = Web3j.build(webSocket);
+                //subscribe to everything from the contract; TipIndexer picks out the tip events by topic.
+                //Web3j.logsNotifications drops the removed flag, so ask for the notifications as full logs
+                Request<?, EthSubscribe> subscribe = new Request<>("eth_subscribe",
+                        Arrays.asList("logs", Collections.singletonMap("address", Collections.singletonList(contractAddress))),
+                        webSocket, EthSubscribe.class);
+                logs = webSocket.subscribe(subscribe, "eth_unsubscribe", LogNotification.class)
+                        .map(notification -> notification.getParams().getResult());
+                System.out.println("Tip stream: subscribed over WebSocket");
+            }
+            catch (Exception e)
+            {
+                System.out.println("Tip stream: WebSocket unavailable (" + e.getMessage() + "), polling a log filter instead");
+                webSocketWeb3j = null;
+            }
+        }
+
+        if (logs == null)
+        {
+            EthFilter filter = new EthFilter(DefaultBlockParameterName.LATEST, DefaultBlockParameterName.LATEST, contractAddress)
+                    .addOptionalTopics(TipIndexer.CREATE_TIP_TOPIC, TipIndexer.COLLECT_TIPS_TOPIC, TipIndexer.CANCEL_TIP_TOPIC);
+            logs = node.getWeb3j().ethLogFlowable(filter);
+        }
+
+        subscription = logs.subscribe(listener::onLog, this::onError);
+
+        //read after subscribing, so any later block is covered by the stream
+        try
+        {
+            liveFromBlock = node.getWeb3j().ethBlockNumber().send().getBlockNumber().longValue();
+        }
+        catch (Exception e)
+        {
+            onError(e);
+            return;
+        }
+        live = true;
+    }
+
+    private void onError(Throwable error)
+    {
+        System.out.println("Tip stream: " + error.getMessage() + ", reconnecting in " + retrySeconds + "s");
+        disconnect();
+        Completable.timer(retrySeconds, TimeUnit.SECONDS, Schedulers.io())
+                .subscribe(this::connect);
+    }
+
+    private synchronized void disconnect()
+    {
+        live = false;
+        liveFromBlock = Long.MAX_VALUE;
+        if (subscription != null && !subscription.isDisposed())
+        {
+            subscription.dispose();
+        }
+        if (webSocketWeb3j != null)
+        {
+            webSocketWeb3j.shutdown();
+            webSocketWeb3j = null;
+        }
+    }
+
+    public static class LogNotification extends Notification<Log>
+    {
+    }
+}
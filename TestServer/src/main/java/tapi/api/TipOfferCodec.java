@@ -0,0 +1,286 @@
+package tapi.api;
+
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Bool;
+import org.web3j.abi.datatypes.DynamicBytes;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.crypto.Hash;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ABI encoding and decoding for the TipOffer calls, written straight to and read straight from bytes. Selectors
+ * are worked out once, calldata is built in a per-thread buffer that's reused between calls, and results are read
+ * at their offsets without building web3j Type trees or going through TypeReference reflection.
+ *
+ *   createTip(PaymentToken[] paymentTokens, string identifier)   PaymentToken = (address, uint256, bytes)
+ *   collectTip(uint256[] tipIds, bytes attestation)
+ *   getTips(uint256[]) returns (TipQuery[])                        TipQuery = (PaymentToken[], uint256, bool)
+ *   ERC20 approve(address, uint256)
+ */
+public class TipOfferCodec
+{
+    private static final byte[] CREATE_TIP = selector("createTip((address,uint256,bytes)[],string)");
+    private static final byte[] COLLECT_TIP = selector("collectTip(uint256[],bytes)");
+    private static final byte[] GET_TIPS = selector("getTips(uint256[])");
+    private static final byte[] APPROVE = selector("approve(address,uint256)");
+
+    private static final ThreadLocal<Writer> WRITER = ThreadLocal.withInitial(Writer::new);
+
+    /***********************************
+     * Calldata
+     ***********************************/
+
+    public static byte[] encodeCreateTip(List<PaymentToken> tokens, String identifier)
+    {
+        byte[] id = identifier.getBytes(StandardCharsets.UTF_8);
+        int tokensSize = 32 + tokens.size() * 32;
+        for (PaymentToken token : tokens)
+        {
+            tokensSize += 3 * 32 + bytesSize(token.auth.getValue());
+        }
+
+        Writer w = WRITER.get().begin(CREATE_TIP);
+        w.putInt(64);
+        w.putInt(64 + tokensSize);
+
+        //PaymentToken[]: count, offset of each tuple from just after the count, then the tuples
+        w.putInt(tokens.size());
+        int offset = tokens.size() * 32;
+        for (PaymentToken token : tokens)
+        {
+            w.putInt(offset);
+            offset += 3 * 32 + bytesSize(token.auth.getValue());
+        }
+        for (PaymentToken token : tokens)
+        {
+            w.putAddress(token.address.getValue());
+            w.putUint(token.value.getValue());
+            w.putInt(96);
+            w.putBytes(token.auth.getValue());
+        }
+
+        w.putBytes(id);
+        return w.toArray();
+    }
+
+    public static byte[] encodeCollectTip(List<BigInteger> tipIds, byte[] attestation)
+    {
+        Writer w = WRITER.get().begin(COLLECT_TIP);
+        w.putInt(64);
+        w.putInt(64 + 32 + tipIds.size() * 32);
+        w.putUintArray(tipIds);
+        w.putBytes(attestation);
+        return w.toArray();
+    }
+
+    public static byte[] encodeGetTips(List<BigInteger> tipIds)
+    {
+        Writer w = WRITER.get().begin(GET_TIPS);
+        w.putInt(32);
+        w.putUintArray(tipIds);
+        return w.toArray();
+    }
+
+    public static byte[] encodeApprove(String spender, BigInteger amount)
+    {
+        Writer w = WRITER.get().begin(APPROVE);
+        w.putAddress(spender);
+        w.putUint(amount);
+        return w.toArray();
+    }
+
+    /***********************************
+     * Results
+     ***********************************/
+
+    /**
+     * Decode getTips(uint256[]), ie TipQuery[] in request order
+     */
+    public static List<TipQuery> decodeTips(String result)
+    {
+        byte[] data = Numeric.hexStringToByteArray(result);
+        List<TipQuery> tips = new ArrayList<>();
+        if (data.length < 64) return tips;
+
+        int arrayStart = readInt(data, 0);
+        int count = readCount(data, arrayStart);
+        int tipBase = arrayStart + 32; // element offsets are relative to the start of the offset table
+        for (int i = 0; i < count; i++)
+        {
+            int tipStart = tipBase + readInt(data, tipBase + i * 32);
+            PaymentToken[] tokens = readPaymentTokens(data, tipStart + readInt(data, tipStart));
+            Uint256 weiValue = new Uint256(readUint(data, tipStart + 32));
+            Bool completed = new Bool(readBool(data, tipStart + 64));
+            tips.add(new TipQuery(tokens, weiValue, completed));
+        }
+
+        return tips;
+    }
+
+    private static PaymentToken[] readPaymentTokens(byte[] data, int tokensStart)
+    {
+        int tokenCount = readCount(data, tokensStart);
+        int tokenBase = tokensStart + 32;
+        PaymentToken[] tokens = new PaymentToken[tokenCount];
+        for (int j = 0; j < tokenCount; j++)
+        {
+            int tokenStart = tokenBase + readInt(data, tokenBase + j * 32);
+            Address erc20 = new Address(readAddress(data, tokenStart));
+            Uint256 amount = new Uint256(readUint(data, tokenStart + 32));
+            byte[] auth = readBytes(data, tokenStart + readInt(data, tokenStart + 64));
+            tokens[j] = new PaymentToken(erc20, amount, new DynamicBytes(auth));
+        }
+        return tokens;
+    }
+
+    private static BigInteger readUint(byte[] data, int offset)
+    {
+        checkWord(data, offset);
+        return new BigInteger(1, Arrays.copyOfRange(data, offset, offset + 32));
+    }
+
+    // Offsets, lengths and counts; anything that doesn't fit an int can't be a valid position in the result
+    private static int readInt(byte[] data, int offset)
+    {
+        checkWord(data, offset);
+        for (int i = offset; i < offset + 28; i++)
+        {
+            if (data[i] != 0) throw new IllegalArgumentException("ABI value too large at " + offset);
+        }
+        int value = ((data[offset + 28] & 0xFF) << 24) | ((data[offset + 29] & 0xFF) << 16)
+                | ((data[offset + 30] & 0xFF) << 8) | (data[offset + 31] & 0xFF);
+        if (value < 0) throw new IllegalArgumentException("ABI value too large at " + offset);
+        return value;
+    }
+
+    // An array length: each element takes at least a word after it, so a count the data can't hold is rejected
+    // before anything is sized from it
+    private static int readCount(byte[] data, int offset)
+    {
+        int count = readInt(data, offset);
+        if ((long) count * 32 > data.length - (offset + 32L)) throw new IllegalArgumentException("ABI array length " + count + " runs past end of data");
+        return count;
+    }
+
+    private static boolean readBool(byte[] data, int offset)
+    {
+        checkWord(data, offset);
+        return data[offset + 31] != 0;
+    }
+
+    private static String readAddress(byte[] data, int offset)
+    {
+        checkWord(data, offset);
+        return Numeric.toHexString(Arrays.copyOfRange(data, offset + 12, offset + 32));
+    }
+
+    private static byte[] readBytes(byte[] data, int offset)
+    {
+        int length = readInt(data, offset);
+        if (offset + 32L + length > data.length) throw new IllegalArgumentException("ABI bytes run past end of data");
+        return Arrays.copyOfRange(data, offset + 32, offset + 32 + length);
+    }
+
+    private static void checkWord(byte[] data, int offset)
+    {
+        if (offset < 0 || offset + 32L > data.length) throw new IllegalArgumentException("ABI word out of range at " + offset);
+    }
+
+    private static int bytesSize(byte[] value)
+    {
+        return 32 + ((value.length + 31) / 32) * 32;
+    }
+
+    private static byte[] selector(String signature)
+    {
+        return Arrays.copyOf(Hash.sha3(signature.getBytes(StandardCharsets.UTF_8)), 4);
+    }
+
+    // Growable calldata buffer, one per thread
+    private static class Writer
+    {
+        private byte[] buffer = new byte[1024];
+        private int position;
+
+        Writer begin(byte[] selector)
+        {
+            position = 0;
+            ensure(4);
+            System.arraycopy(selector, 0, buffer, 0, 4);
+            position = 4;
+            return this;
+        }
+
+        void putInt(int value)
+        {
+            ensure(32);
+            Arrays.fill(buffer, position, position + 28, (byte) 0);
+            buffer[position + 28] = (byte) (value >>> 24);
+            buffer[position + 29] = (byte) (value >>> 16);
+            buffer[position + 30] = (byte) (value >>> 8);
+            buffer[position + 31] = (byte) value;
+            position += 32;
+        }
+
+        void putUint(BigInteger value)
+        {
+            if (value.signum() < 0 || value.bitLength() > 256) throw new IllegalArgumentException("Not a uint256: " + value);
+            byte[] bytes = value.toByteArray();
+            int start = bytes.length > 32 ? 1 : 0; // sign byte of a full 256 bit value
+            int length = bytes.length - start;
+            ensure(32);
+            Arrays.fill(buffer, position, position + 32 - length, (byte) 0);
+            System.arraycopy(bytes, start, buffer, position + 32 - length, length);
+            position += 32;
+        }
+
+        void putAddress(String address)
+        {
+            byte[] bytes = Numeric.hexStringToByteArray(address);
+            if (bytes.length != 20) throw new IllegalArgumentException("Not an address: " + address);
+            ensure(32);
+            Arrays.fill(buffer, position, position + 12, (byte) 0);
+            System.arraycopy(bytes, 0, buffer, position + 12, 20);
+            position += 32;
+        }
+
+        void putUintArray(List<BigInteger> values)
+        {
+            putInt(values.size());
+            for (BigInteger value : values)
+            {
+                putUint(value);
+            }
+        }
+
+        // Length, then the bytes padded to a whole word
+        void putBytes(byte[] value)
+        {
+            putInt(value.length);
+            int padded = ((value.length + 31) / 32) * 32;
+            ensure(padded);
+            System.arraycopy(value, 0, buffer, position, value.length);
+            Arrays.fill(buffer, position + value.length, position + padded, (byte) 0);
+            position += padded;
+        }
+
+        byte[] toArray()
+        {
+            return Arrays.copyOf(buffer, position);
+        }
+
+        private void ensure(int extra)
+        {
+            if (position + extra > buffer.length)
+            {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+            }
+        }
+    }
+}
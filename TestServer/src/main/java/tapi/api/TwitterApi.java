@@ -0,0 +1,202 @@
+package tapi.api;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import io.reactivex.schedulers.Schedulers;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Twitter v2 user lookups. Single lookups made through requestUser() are gathered for batchWindowMillis and sent
+ * as one users/by?usernames= call (up to MAX_USERNAMES per call), each caller's future being completed from the
+ * shared response. A username Twitter doesn't know completes with null, as does one that isn't a valid Twitter
+ * username: those are never sent, since one bad name makes Twitter reject the whole batch.
+ *
+ * Calls are paced by TwitterRateLimit. Interactive lookups (a page is waiting) and background refreshes are
+ * batched separately so a refresh never holds up an interactive lookup, and background batches wait for the window
+ * rather than eating into its reserve. An interactive batch that would have to wait longer than maxWaitMillis
+ * fails instead, so the caller can fall back to what it has cached.
+ */
+public class TwitterApi
+{
+    private static final String USERS_URL = "https://api.twitter.com/2/users/by";
+    private static final int MAX_USERNAMES = 100;
+    private static final Pattern USERNAME = Pattern.compile("^[A-Za-z0-9_]{1,15}$");
+
+    private final OkHttpClient client;
+    private final String bearerToken;
+    private final long batchWindowMillis;
+    private final long maxWaitMillis;
+    private final TwitterRateLimit rateLimit;
+
+    private final Object batchLock = new Object();
+    private Map<String, CompletableFuture<TwitterData>> batch = new LinkedHashMap<>();
+    private Map<String, CompletableFuture<TwitterData>> backgroundBatch = new LinkedHashMap<>();
+
+    public TwitterApi(String bearerToken, long batchWindowMillis, long maxWaitMillis, double backgroundReserve)
+    {
+        this.bearerToken = bearerToken;
+        this.batchWindowMillis = batchWindowMillis;
+        this.maxWaitMillis = maxWaitMillis;
+        this.rateLimit = new TwitterRateLimit(backgroundReserve);
+        this.client = new OkHttpClient.Builder()
+                .connectTimeout(15, TimeUnit.SECONDS)
+                .readTimeout(15, TimeUnit.SECONDS)
+                .writeTimeout(15, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true)
+                .build();
+    }
+
+    /**
+     * Look up a user as part of the next batch
+     * @param background true for refreshes nobody is waiting on
+     */
+    public CompletableFuture<TwitterData> requestUser(String username, boolean background)
+    {
+        if (!USERNAME.matcher(username).matches()) return CompletableFuture.completedFuture(null);
+
+        String key = username.toLowerCase(Locale.ROOT);
+        Map<String, CompletableFuture<TwitterData>> full = null;
+        CompletableFuture<TwitterData> future;
+        synchronized (batchLock)
+        {
+            //a refresh can share an interactive lookup already queued, but not the other way round
+            future = batch.get(key);
+            if (future == null && background) future = backgroundBatch.get(key);
+            if (future != null) return future;
+
+            Map<String, CompletableFuture<TwitterData>> pending = background ? backgroundBatch : batch;
+            future = new CompletableFuture<>();
+            pending.put(key, future);
+            if (pending.size() == 1)
+            {
+                Schedulers.io().scheduleDirect(() -> sendBatch(background), batchWindowMillis, TimeUnit.MILLISECONDS);
+            }
+            else if (pending.size() >= MAX_USERNAMES)
+            {
+                full = takeBatch(background);
+            }
+        }
+
+        if (full != null)
+        {
+            Map<String, CompletableFuture<TwitterData>> send = full;
+            Schedulers.io().scheduleDirect(() -> sendBatch(send, background));
+        }
+        return future;
+    }
+
+    private Map<String, CompletableFuture<TwitterData>> takeBatch(boolean background)
+    {
+        Map<String, CompletableFuture<TwitterData>> taken;
+        if (background)
+        {
+            taken = backgroundBatch;
+            backgroundBatch = new LinkedHashMap<>();
+        }
+        else
+        {
+            taken = batch;
+            batch = new LinkedHashMap<>();
+        }
+        return taken;
+    }
+
+    private void sendBatch(boolean background)
+    {
+        Map<String, CompletableFuture<TwitterData>> send;
+        synchronized (batchLock)
+        {
+            send = takeBatch(background);
+        }
+        //already sent if it filled up
+        if (!send.isEmpty()) sendBatch(send, background);
+    }
+
+    private void sendBatch(Map<String, CompletableFuture<TwitterData>> send, boolean background)
+    {
+        long wait = rateLimit.reserve(background);
+        if (wait > 0)
+        {
+            if (background || wait <= maxWaitMillis)
+            {
+                Schedulers.io().scheduleDirect(() -> sendBatch(send, background), wait, TimeUnit.MILLISECONDS);
+            }
+            else
+            {
+                IOException throttled = new IOException("Twitter rate limited for another " + (wait / 1000) + "s");
+                send.values().forEach(future -> future.completeExceptionally(throttled));
+            }
+            return;
+        }
+
+        try
+        {
+            Map<String, TwitterData> users = lookupUsers(new ArrayList<>(send.keySet()));
+            send.forEach((username, future) -> future.complete(users.get(username)));
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+            send.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * @return lowercase username -> user, for the users Twitter knows
+     */
+    private Map<String, TwitterData> lookupUsers(List<String> usernames) throws IOException
+    {
+        Map<String, TwitterData> users = new HashMap<>();
+        HttpUrl url = HttpUrl.get(USERS_URL).newBuilder()
+                .addQueryParameter("usernames", String.join(",", usernames))
+                .addQueryParameter("user.fields", "profile_image_url")
+                .build();
+
+        Request request = new Request.Builder()
+                .url(url)
+                .get()
+                .addHeader("Authorization", "Bearer " + bearerToken)
+                .build();
+
+        try (Response response = client.newCall(request).execute())
+        {
+            rateLimit.update(response);
+            if (!response.isSuccessful()) throw new IOException("Twitter lookup failed: " + response.code());
+            String result = response.body() != null ? response.body().string() : "";
+
+            UserList list = new Gson().fromJson(result, UserList.class);
+            if (list != null && list.data != null)
+            {
+                for (TwitterData user : list.data)
+                {
+                    users.put(user.username.toLowerCase(Locale.ROOT), user);
+                }
+            }
+        }
+        catch (JsonSyntaxException e)
+        {
+            throw new IOException(e);
+        }
+
+        return users;
+    }
+
+    private static class UserList
+    {
+        List<TwitterData> data;
+    }
+}
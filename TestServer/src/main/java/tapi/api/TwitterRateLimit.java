@@ -0,0 +1,82 @@
+package tapi.api;
+
+import okhttp3.Response;
+
+/**
+ * Client side view of the bearer token's rate window, kept up to date from the x-rate-limit-* headers of each
+ * response. Interactive calls may use the whole window; background calls leave a reserve for them and are spread
+ * evenly over what's left of the window instead of using it up in a burst.
+ *
+ * Until the first response is seen the limit is unknown and calls go straight out.
+ */
+public class TwitterRateLimit
+{
+    private final double backgroundReserve;
+
+    private int limit = -1;
+    private int remaining = -1;
+    private long resetMillis;
+    private long lastBackgroundCall;
+
+    /**
+     * @param backgroundReserve fraction of the window background calls may not use
+     */
+    public TwitterRateLimit(double backgroundReserve)
+    {
+        this.backgroundReserve = backgroundReserve;
+    }
+
+    /**
+     * Take a call from the window if one is available now
+     * @return 0 if the call can be made, otherwise millis until it's worth asking again
+     */
+    public synchronized long reserve(boolean background)
+    {
+        long now = System.currentTimeMillis();
+        if (remaining < 0) return 0;
+        if (now >= resetMillis)
+        {
+            //new window; the next response will tell us exactly what's left
+            remaining = limit;
+            resetMillis = now + 15 * 60 * 1000L;
+            if (remaining < 0) return 0;
+        }
+
+        int available = background ? remaining - (int) Math.ceil(Math.max(limit, 0) * backgroundReserve) : remaining;
+        if (available <= 0) return resetMillis - now;
+
+        if (background)
+        {
+            long spacing = (resetMillis - now) / available;
+            long wait = lastBackgroundCall + spacing - now;
+            if (wait > 0) return wait;
+            lastBackgroundCall = now;
+        }
+
+        remaining--;
+        return 0;
+    }
+
+    public synchronized void update(Response response)
+    {
+        String limitHeader = response.header("x-rate-limit-limit");
+        String remainingHeader = response.header("x-rate-limit-remaining");
+        String resetHeader = response.header("x-rate-limit-reset");
+        try
+        {
+            if (limitHeader != null) limit = Integer.parseInt(limitHeader);
+            if (remainingHeader != null) remaining = Integer.parseInt(remainingHeader);
+            if (resetHeader != null) resetMillis = Long.parseLong(resetHeader) * 1000L;
+        }
+        catch (NumberFormatException e)
+        {
+            e.printStackTrace();
+        }
+
+        if (response.code() == 429)
+        {
+            remaining = 0;
+            if (resetHeader == null) resetMillis = System.currentTimeMillis() + 60 * 1000L;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package tapi.api;
+
+import io.reactivex.Observable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Username -> TwitterData cache in front of the Twitter users lookup. Found users are kept for the TTL, unknown
+ * names for a much shorter time (so a typo doesn't cost an API call per retry but a new account shows up soon), and
+ * the least recently used entries are dropped past maxEntries.
+ *
+ * Only one upstream lookup runs per username: concurrent callers for the same name wait on the same fetch.
+ * A failed fetch (network, rate limit) isn't cached; the expired entry is served instead if there is one.
+ *
+ * Users that were read since they were last fetched are refreshed in the background shortly before they expire, so popular
+ * tip recipients don't fall out of the cache.
+ */
+public class TwitterUsers
+{
+    public interface Fetcher
+    {
+        /**
+         * @return future of the user, completing with null if Twitter says there's no such user, or exceptionally
+         * if the lookup couldn't be made
+         */
+        CompletableFuture<TwitterData> fetch(String username, boolean background);
+    }
+
+    private final Fetcher fetcher;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final Map<String, CacheEntry> cache;
+    private final Map<String, CompletableFuture<TwitterData>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<TwitterData>> refreshing = new ConcurrentHashMap<>(); // paced, so kept apart
+
+    @Nullable
+    private Disposable refreshDisposable;
+
+    public TwitterUsers(Fetcher fetcher, int maxEntries, long ttlSeconds, long negativeTtlSeconds)
+    {
+        this.fetcher = fetcher;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.negativeTtlMillis = TimeUnit.SECONDS.toMillis(negativeTtlSeconds);
+        this.cache = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest)
+            {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Refresh users that were read during their TTL and expire within the next two refresh periods
+     */
+    public void start(long refreshSeconds)
+    {
+        refreshDisposable = Observable.interval(refreshSeconds, refreshSeconds, TimeUnit.SECONDS, Schedulers.io())
+                .doOnNext(l -> refreshExpiring(TimeUnit.SECONDS.toMillis(refreshSeconds * 2)))
+                .subscribe();
+    }
+
+    public void stop()
+    {
+        if (refreshDisposable != null && !refreshDisposable.isDisposed())
+        {
+            refreshDisposable.dispose();
+        }
+    }
+
+    /**
+     * @return the user, or null if unknown or the lookup failed
+     */
+    @Nullable
+    public TwitterData lookup(String username)
+    {
+        return join(lookupAsync(username, false));
+    }
+
+    private CompletableFuture<TwitterData> lookupAsync(String username, boolean refresh)
+    {
+        String key = username.toLowerCase(Locale.ROOT);
+        if (!refresh)
+        {
+            CacheEntry entry = getEntry(key);
+            if (entry != null && entry.expires > System.currentTimeMillis())
+            {
+                entry.lastRead = System.currentTimeMillis();
+                return CompletableFuture.completedFuture(entry.data);
+            }
+        }
+
+        Map<String, CompletableFuture<TwitterData>> pending = refresh ? refreshing : inFlight;
+        CompletableFuture<TwitterData> lookup = new CompletableFuture<>();
+        CompletableFuture<TwitterData> existing = pending.putIfAbsent(key, lookup);
+        //someone else is already asking Twitter
+        if (existing != null) return existing;
+
+        CompletableFuture<TwitterData> fetch;
+        try
+        {
+            fetch = fetcher.fetch(username, refresh);
+        }
+        catch (Exception e)
+        {
+            fetch = new CompletableFuture<>();
+            fetch.completeExceptionally(e);
+        }
+
+        fetch.whenComplete((data, error) -> {
+            if (error == null)
+            {
+                long ttl = data != null ? ttlMillis : negativeTtlMillis;
+                CacheEntry entry = new CacheEntry(data, System.currentTimeMillis() + ttl);
+                //a background refresh doesn't count as a read
+                if (!refresh) entry.lastRead = System.currentTimeMillis();
+                putEntry(key, entry);
+            }
+            pending.remove(key, lookup);
+            if (error == null)
+            {
+                lookup.complete(data);
+                return;
+            }
+
+            //throttled or unreachable: an expired entry is better than 'unknown user'
+            CacheEntry stale = getEntry(key);
+            if (stale != null && stale.data != null) lookup.complete(stale.data);
+            else lookup.completeExceptionally(error);
+        });
+        return lookup;
+    }
+
+    private void refreshExpiring(long withinMillis)
+    {
+        long now = System.currentTimeMillis();
+        List<String> expiring = new ArrayList<>();
+        synchronized (cache)
+        {
+            for (Map.Entry<String, CacheEntry> entry : cache.entrySet())
+            {
+                CacheEntry e = entry.getValue();
+                if (e.data != null && e.expires > now && e.expires - now < withinMillis
+                        && e.lastRead > e.expires - ttlMillis)
+                {
+                    expiring.add(entry.getKey());
+                }
+            }
+        }
+
+        //issued together so they go out in the same batch
+        for (String username : expiring)
+        {
+            lookupAsync(username, true);
+        }
+    }
+
+    @Nullable
+    private static TwitterData join(CompletableFuture<TwitterData> lookup)
+    {
+        try
+        {
+            return lookup.join();
+        }
+        catch (Exception e)
+        {
+            return null;
+        }
+    }
+
+    @Nullable
+    private CacheEntry getEntry(String key)
+    {
+        synchronized (cache)
+        {
+            return cache.get(key);
+        }
+    }
+
+    private void putEntry(String key, CacheEntry entry)
+    {
+        synchronized (cache)
+        {
+            cache.put(key, entry);
+        }
+    }
+
+    private static class CacheEntry
+    {
+        @Nullable
+        final TwitterData data; // null: no such user
+        final long expires;
+        volatile long lastRead;
+
+        CacheEntry(@Nullable TwitterData data, long expires)
+        {
+            this.data = data;
+            this.expires = expires;
+        }
+    }
+}
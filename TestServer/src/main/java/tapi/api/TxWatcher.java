@@ -0,0 +1,183 @@
+package tapi.api;
+
+import io.reactivex.Observable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import org.jetbrains.annotations.Nullable;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.response.EthGetTransactionReceipt;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Watches the transactions that pages are waiting on (see checkTx). Once per new block the receipts of all
+ * pending hashes are fetched in one JSON-RPC batch, and mined transactions go into the hash -> block number map,
+ * so checkTx answers from memory however many pages are polling.
+ *
+ * A hash stops being watched when nobody has asked about it for FORGET_MINUTES, and mined entries are dropped
+ * after the same time. At most maxPending hashes are watched; past that the one asked about least recently is
+ * dropped to make room.
+ */
+public class TxWatcher
+{
+    public interface MinedListener
+    {
+        void onMined(String txHash, BigInteger blockNumber);
+    }
+
+    private static final long FORGET_MINUTES = 30;
+    private static final int MAX_BATCH = 100;
+    private static final Pattern TX_HASH = Pattern.compile("0x[0-9a-fA-F]{64}");
+
+    private final EthereumNode node;
+    private final Map<String, BigInteger> hashToBlockNumber;
+    private final int maxPending;
+    private final Map<String, Long> pending = new ConcurrentHashMap<>(); // hash -> last time a page asked
+    private final Map<String, Long> minedTime = new ConcurrentHashMap<>();
+    private volatile long lastBlock = -1;
+    @Nullable
+    private MinedListener minedListener;
+
+    @Nullable
+    private Disposable pollDisposable;
+
+    public TxWatcher(EthereumNode node, Map<String, BigInteger> hashToBlockNumber, int maxPending)
+    {
+        this.node = node;
+        this.hashToBlockNumber = hashToBlockNumber;
+        this.maxPending = maxPending;
+    }
+
+    public static boolean isTxHash(String txHash)
+    {
+        return TX_HASH.matcher(txHash).matches();
+    }
+
+    public void setMinedListener(MinedListener listener)
+    {
+        this.minedListener = listener;
+    }
+
+    public void start(long pollSeconds)
+    {
+        pollDisposable = Observable.interval(pollSeconds, pollSeconds, TimeUnit.SECONDS, Schedulers.io())
+                .doOnNext(l -> poll())
+                .subscribe();
+    }
+
+    public void stop()
+    {
+        if (pollDisposable != null && !pollDisposable.isDisposed())
+        {
+            pollDisposable.dispose();
+        }
+    }
+
+    /**
+     * @param txHash 0x and 64 hex digits, see isTxHash
+     * @return block the transaction was mined in, or null if it's still pending (it's then watched)
+     */
+    @Nullable
+    public BigInteger getBlockNumber(String txHash)
+    {
+        if (!isTxHash(txHash)) throw new IllegalArgumentException("Not a transaction hash: " + txHash);
+        String hash = txHash.toLowerCase(Locale.ROOT);
+        BigInteger blockNumber = hashToBlockNumber.get(hash);
+        if (blockNumber == null)
+        {
+            if (pending.put(hash, System.currentTimeMillis()) == null && pending.size() > maxPending) dropStalest();
+        }
+        return blockNumber;
+    }
+
+    private void dropStalest()
+    {
+        String stalest = null;
+        long stalestTime = Long.MAX_VALUE;
+        for (Map.Entry<String, Long> entry : pending.entrySet())
+        {
+            if (entry.getValue() < stalestTime)
+            {
+                stalest = entry.getKey();
+                stalestTime = entry.getValue();
+            }
+        }
+        if (stalest != null) pending.remove(stalest, stalestTime);
+    }
+
+    private void poll()
+    {
+        try
+        {
+            expire();
+            if (pending.isEmpty()) return;
+
+            long head = node.getWeb3j().ethBlockNumber().send().getBlockNumber().longValue();
+            if (head == lastBlock) return; // nothing new can have been mined
+
+            List<String> hashes = new ArrayList<>(pending.keySet());
+            boolean complete = true;
+            for (int i = 0; i < hashes.size(); i += MAX_BATCH)
+            {
+                complete &= checkReceipts(hashes.subList(i, Math.min(i + MAX_BATCH, hashes.size())));
+            }
+            //if a batch failed, try again before the next block
+            if (complete) lastBlock = head;
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean checkReceipts(List<String> hashes) throws Exception
+    {
+        List<Request<?, EthGetTransactionReceipt>> requests = new ArrayList<>();
+        for (String hash : hashes)
+        {
+            requests.add(node.getWeb3j().ethGetTransactionReceipt(hash));
+        }
+
+        boolean complete = true;
+        List<EthGetTransactionReceipt> results = node.sendBatch(requests);
+        for (int i = 0; i < hashes.size(); i++)
+        {
+            EthGetTransactionReceipt result = results.get(i);
+            if (result == null || result.hasError())
+            {
+                complete = false;
+                continue;
+            }
+
+            TransactionReceipt receipt = result.getResult();
+            if (receipt != null && receipt.getBlockNumberRaw() != null)
+            {
+                String hash = hashes.get(i);
+                hashToBlockNumber.put(hash, receipt.getBlockNumber());
+                minedTime.put(hash, System.currentTimeMillis());
+                pending.remove(hash);
+                if (minedListener != null) minedListener.onMined(hash, receipt.getBlockNumber());
+            }
+        }
+        return complete;
+    }
+
+    private void expire()
+    {
+        long expiry = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(FORGET_MINUTES);
+        pending.values().removeIf(lastAsked -> lastAsked < expiry);
+        minedTime.entrySet().removeIf(entry -> {
+            if (entry.getValue() >= expiry) return false;
+            hashToBlockNumber.remove(entry.getKey());
+            return true;
+        });
+    }
+}
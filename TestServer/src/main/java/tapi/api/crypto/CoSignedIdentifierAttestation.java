@@ -1,7 +1,10 @@
 package tapi.api.crypto;
 
+import java.io.IOException;
 import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1InputStream;
 import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1Sequence;
 import org.bouncycastle.asn1.DERBitString;
 import org.bouncycastle.asn1.DERSequence;
 import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
@@ -37,6 +40,21 @@ public class CoSignedIdentifierAttestation implements ASNEncodable, Verifiable,
         }
     }
 
+    /**
+     * Restore from getDerEncoding(). The subject key is taken from the inner attestation, and both signatures are checked
+     */
+    public CoSignedIdentifierAttestation(byte[] derEncoding, AsymmetricKeyParameter attestorKey) throws IOException {
+        ASN1InputStream input = new ASN1InputStream(derEncoding);
+        ASN1Sequence asn1 = ASN1Sequence.getInstance(input.readObject());
+        this.att = new SignedIdentifierAttestation(asn1.getObjectAt(0).toASN1Primitive().getEncoded(), attestorKey);
+        this.signature = DERBitString.getInstance(asn1.getObjectAt(2)).getBytes();
+        this.attestationVerificationKey = SignatureUtility.restoreKeyFromSPKI(
+                att.getUnsignedAttestation().getSubjectPublicKeyInfo().getEncoded());
+        if (!verify()) {
+            throw new IllegalArgumentException("The signature is not valid");
+        }
+    }
+
     public SignedIdentifierAttestation getUnsignedAttestation() {
         return att;
     }
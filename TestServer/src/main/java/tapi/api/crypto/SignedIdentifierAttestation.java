@@ -77,7 +77,7 @@ public class SignedIdentifierAttestation implements ASNEncodable, Verifiable, Va
     return constructSignedAttestation(this.att, this.signature);
   }
 
-  static byte[] constructSignedAttestation(Attestation unsignedAtt, byte[] signature) {
+  public static byte[] constructSignedAttestation(Attestation unsignedAtt, byte[] signature) {
     try {
       byte[] rawAtt = unsignedAtt.getPrehash();
       ASN1EncodableVector res = new ASN1EncodableVector();
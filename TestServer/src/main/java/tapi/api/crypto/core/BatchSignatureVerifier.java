@@ -0,0 +1,214 @@
+package tapi.api.crypto.core;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.math.ec.ECAlgorithms;
+import org.bouncycastle.math.ec.ECPoint;
+
+import static tapi.api.crypto.core.SignatureUtility.ECDSA_DOMAIN;
+
+/**
+ * Verifies many Ethereum signatures (r || s || v, chain ID 0) at once, each against the key and address it should
+ * have been made with.
+ *
+ * The v byte fixes R exactly, so a signature is valid iff R = u1*G + u2*Q, with u1 = z/s and u2 = r/s. Rather than
+ * checking each equation, the batch is checked as one random linear combination
+ *   sum(a_i*R_i) - (sum(a_i*u1_i))*G - sum(a_i*u2_i*Q_i) = O
+ * in a single multi-scalar multiply: the doublings are shared by every term, each R_i only has a 128 bit weight
+ * to multiply by, and the G terms and the terms of signatures made by the same key (eg all the attestor's) are
+ * merged into one. The a_i are random, so a batch holding a bad signature passes with probability 2^-128. When a
+ * batch fails it's split in half and each half checked again, until the bad signatures are found.
+ *
+ * This is the same check as recovering the key from the signature and comparing addresses, but it needs the key up
+ * front: a signature that can only be checked against an address has to go through
+ * SignatureUtility.verifyEthereumSignature.
+ *
+ * Not thread safe; use one verifier per batch.
+ */
+public class BatchSignatureVerifier {
+    private static final int WEIGHT_BITS = 128;
+
+    private final SecureRandom random;
+    private final List<Entry> entries = new ArrayList<>();
+
+    private static class Entry {
+        final BigInteger z;
+        final BigInteger r;
+        final BigInteger s;
+        final ECPoint R;
+        final ECPoint Q;
+        BigInteger u1; // z/s and r/s, worked out for the whole batch in verify()
+        BigInteger u2;
+
+        Entry(BigInteger z, BigInteger r, BigInteger s, ECPoint R, ECPoint Q) {
+            this.z = z;
+            this.r = r;
+            this.s = s;
+            this.R = R;
+            this.Q = Q;
+        }
+    }
+
+    public BatchSignatureVerifier() {
+        this(new SecureRandom());
+    }
+
+    public BatchSignatureVerifier(SecureRandom random) {
+        this.random = random;
+    }
+
+    /**
+     * Queue a signature on message as it is
+     * @return the entry's index in the result of verify()
+     */
+    public int add(byte[] message, byte[] signature, AsymmetricKeyParameter publicKey, String address) {
+        entries.add(prepare(message, signature, publicKey, address));
+        return entries.size() - 1;
+    }
+
+    /**
+     * Queue a signature on message with the Ethereum personal message prefix, ie the counterpart of
+     * SignatureUtility.verifyPersonalEthereumSignature
+     * @return the entry's index in the result of verify()
+     */
+    public int addPersonal(byte[] message, byte[] signature, AsymmetricKeyParameter publicKey, String address) {
+        return add(SignatureUtility.convertToPersonalEthMessage(message), signature, publicKey, address);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return for each entry in the order added, whether its signature is valid
+     */
+    public boolean[] verify() {
+        boolean[] results = new boolean[entries.size()];
+        List<Integer> candidates = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i) != null) {
+                candidates.add(i);
+            }
+        }
+        computeU(candidates);
+        verify(candidates, results, false);
+        return results;
+    }
+
+    /**
+     * u1 = z/s and u2 = r/s for every candidate, using one inversion mod n for the lot (Montgomery's trick): invert
+     * the product of all the s, then peel each 1/s off it
+     */
+    private void computeU(List<Integer> candidates) {
+        if (candidates.isEmpty()) {
+            return;
+        }
+        BigInteger n = ECDSA_DOMAIN.getN();
+        BigInteger[] prefix = new BigInteger[candidates.size()];
+        BigInteger product = BigInteger.ONE;
+        for (int i = 0; i < candidates.size(); i++) {
+            prefix[i] = product;
+            product = product.multiply(entries.get(candidates.get(i)).s).mod(n);
+        }
+
+        BigInteger inverse = product.modInverse(n);
+        for (int i = candidates.size() - 1; i >= 0; i--) {
+            Entry entry = entries.get(candidates.get(i));
+            BigInteger sInverse = inverse.multiply(prefix[i]).mod(n);
+            inverse = inverse.multiply(entry.s).mod(n);
+            entry.u1 = entry.z.multiply(sInverse).mod(n);
+            entry.u2 = entry.r.multiply(sInverse).mod(n);
+        }
+    }
+
+    /**
+     * @param failed the batch is already known to fail, ie its parent failed and its other half passed
+     * @return whether every signature in the batch is valid
+     */
+    private boolean verify(List<Integer> batch, boolean[] results, boolean failed) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        if (!failed && holds(batch)) {
+            for (int i : batch) {
+                results[i] = true;
+            }
+            return true;
+        }
+        if (batch.size() > 1) {
+            int half = batch.size() / 2;
+            boolean firstValid = verify(batch.subList(0, half), results, false);
+            verify(batch.subList(half, batch.size()), results, firstValid);
+        }
+        return false;
+    }
+
+    private boolean holds(List<Integer> batch) {
+        BigInteger n = ECDSA_DOMAIN.getN();
+        List<ECPoint> points = new ArrayList<>(batch.size() + 2);
+        List<BigInteger> scalars = new ArrayList<>(batch.size() + 2);
+        Map<ECPoint, BigInteger> keyScalars = new LinkedHashMap<>();
+        BigInteger gScalar = BigInteger.ZERO;
+
+        boolean first = true;
+        for (int i : batch) {
+            Entry entry = entries.get(i);
+            // The first weight can be 1 without weakening the check, and makes a batch of one an exact check
+            BigInteger a = first ? BigInteger.ONE : new BigInteger(WEIGHT_BITS, random);
+            first = false;
+
+            points.add(entry.R);
+            scalars.add(a);
+            gScalar = gScalar.add(a.multiply(entry.u1));
+            keyScalars.merge(entry.Q, a.multiply(entry.u2), BigInteger::add);
+        }
+
+        points.add(ECDSA_DOMAIN.getG());
+        scalars.add(n.subtract(gScalar.mod(n)).mod(n));
+        for (Map.Entry<ECPoint, BigInteger> key : keyScalars.entrySet()) {
+            points.add(key.getKey());
+            scalars.add(n.subtract(key.getValue().mod(n)).mod(n));
+        }
+
+        return ECAlgorithms.sumOfMultiplies(points.toArray(new ECPoint[0]), scalars.toArray(new BigInteger[0]))
+            .isInfinity();
+    }
+
+    /**
+     * Everything that doesn't need the batch: parse the signature, lift R, bring Q onto our curve and check it's the
+     * address's key. Null if any of that fails, which is an invalid signature.
+     */
+    private static Entry prepare(byte[] message, byte[] signature, AsymmetricKeyParameter publicKey, String address) {
+        try {
+            if (signature.length != 65 || SignatureUtility.getChainIdFromSignature(signature) != 0) {
+                return null;
+            }
+            if (!(publicKey instanceof ECPublicKeyParameters) || !SignatureUtility.verifyKeyAgainstAddress(publicKey, address)) {
+                return null;
+            }
+
+            BigInteger[] rs = SignatureUtility.decodeEthereumSignature(signature);
+            BigInteger n = ECDSA_DOMAIN.getN();
+            if (rs[0].signum() <= 0 || rs[0].compareTo(n) >= 0 || rs[1].signum() <= 0) { // s < n/2 is checked in decoding
+                return null;
+            }
+
+            ECPoint R = SignatureUtility.computeY(rs[0], (byte) (1 - (signature[64] % 2)), ECDSA_DOMAIN);
+            // keys restored from an SPKI are on BouncyCastle's generic curve object
+            ECPoint q = ((ECPublicKeyParameters) publicKey).getQ().normalize();
+            ECPoint Q = q.getCurve() == ECDSA_DOMAIN.getCurve() ? q
+                : ECDSA_DOMAIN.getCurve().validatePoint(q.getAffineXCoord().toBigInteger(), q.getAffineYCoord().toBigInteger());
+
+            BigInteger z = new BigInteger(1, AttestationCrypto.hashWithKeccak(message));
+            return new Entry(z, rs[0], rs[1], R, Q);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -27,6 +27,7 @@ import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
 import org.bouncycastle.asn1.x9.X9ECParameters;
 import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
 import org.bouncycastle.crypto.digests.KeccakDigest;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
 import org.bouncycastle.crypto.generators.ECKeyPairGenerator;
 import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
 import org.bouncycastle.crypto.params.ECDomainParameters;
@@ -42,7 +43,12 @@ import org.bouncycastle.crypto.util.PrivateKeyInfoFactory;
 import org.bouncycastle.crypto.util.PublicKeyFactory;
 import org.bouncycastle.crypto.util.SubjectPublicKeyInfoFactory;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.math.ec.ECAlgorithms;
+import org.bouncycastle.math.ec.ECMultiplier;
 import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+import org.bouncycastle.math.ec.FixedPointUtil;
+import org.bouncycastle.util.BigIntegers;
 import org.bouncycastle.util.encoders.Hex;
 import org.web3j.crypto.Hash;
 import org.web3j.utils.Numeric;
@@ -51,10 +57,20 @@ public class SignatureUtility {
     public static final String ECDSA_CURVE_NAME = "secp256k1";
     private static final ASN1ObjectIdentifier OID_CURVE_PARAMS = SECNamedCurves.getOID(
         ECDSA_CURVE_NAME);
-    private static final X9ECParameters ECDSA_CURVE_PARAMS = SECNamedCurves.getByName(ECDSA_CURVE_NAME);
+    // BouncyCastle's dedicated secp256k1: field elements in fixed 32 bit limbs with a fast reduction for p, and the
+    // square root taken with an addition chain. The generic SECNamedCurves curve does all of it in BigInteger.
+    private static final X9ECParameters ECDSA_CURVE_PARAMS = CustomNamedCurves.getByName(ECDSA_CURVE_NAME);
     public static final ECDomainParameters ECDSA_DOMAIN = new ECNamedDomainParameters(OID_CURVE_PARAMS,
         ECDSA_CURVE_PARAMS);
 
+    // Multiples of G come from a comb table built once for G and kept on the point, rather than the default wNAF
+    // multiplier working through all 256 bits from scratch for each signature
+    private static final ECMultiplier BASE_MULTIPLIER = new FixedPointCombMultiplier();
+    static {
+        FixedPointUtil.precompute(ECDSA_DOMAIN.getG());
+    }
+    private static final BigInteger HALF_CURVE_ORDER = ECDSA_DOMAIN.getN().shiftRight(1);
+
     public static final String MAC_ALGO = "HmacSHA256";
     private static final ASN1ObjectIdentifier OID_SIGNATURE_ALG = new ASN1ObjectIdentifier("1.2.840.10045.2.1"); // OID for elliptic curve crypto ecPublicKey
     public static final AlgorithmIdentifier EC_PUBLIC_KEY_IDENTIFIER = new AlgorithmIdentifier(OID_SIGNATURE_ALG);
@@ -186,6 +202,13 @@ public class SignatureUtility {
             bcKeys.getPrivate()));
     }
 
+    /**
+     * k * G on secp256k1, using the precomputed table
+     */
+    public static ECPoint multiplyBase(BigInteger k) {
+        return BASE_MULTIPLIER.multiply(ECDSA_DOMAIN.getG(), k);
+    }
+
     /**
      * Code shamelessly stolen from https://medium.com/@fixone/ecc-for-ethereum-on-android-7e35dc6624c9
      * But then fixed due to a bug in that code.
@@ -282,12 +305,12 @@ public class SignatureUtility {
         ECPoint R;
         do {
             k = randomnessProvider.nextK();
-            R = key.getParameters().getG().multiply(k).normalize();
+            R = BASE_MULTIPLIER.multiply(key.getParameters().getG(), k).normalize();
             r = R.getAffineXCoord().toBigInteger().mod(n);
         } while (r.equals(BigInteger.ZERO));
         BigInteger baseS = k.modInverse(n).multiply(z.add(r.multiply(key.getD()))).mod(n);
         BigInteger normalizedS = normalizeS(baseS, key.getParameters());
-        BigInteger v = R.getAffineYCoord().toBigInteger().mod(new BigInteger("2"));
+        BigInteger v = R.getAffineYCoord().testBitZero() ? BigInteger.ONE : BigInteger.ZERO;
         // Normalize parity in case s needs normalization
         if (!normalizedS.equals(baseS)) {
             // Flip the bit value
@@ -334,7 +357,7 @@ public class SignatureUtility {
      */
     private static byte computeRecoveryValue(BigInteger v, int chainID) {
         // Compute parity of y
-        byte recoveryValue = v.mod(new BigInteger("2")).byteValueExact();
+        byte recoveryValue = (byte) (v.testBit(0) ? 1 : 0);
         // If we are after the fork specified by EIP155 we must also take chain ID into account
         // See https://github.com/ethereum/EIPs/blob/master/EIPS/eip-155.md
         if (chainID != 0) {
@@ -422,17 +445,55 @@ public class SignatureUtility {
         return recoverEthPublicKeyFromSignature(preHash, signature);
     }
 
+    /**
+     * Recover the signer of a personal message that may have been signed in more than one encoding (eg MetaMask signs
+     * the bytes of a hex string rather than its text). The candidates are tried in order and the first key whose
+     * address matches is returned.
+     * The signature's R and u2*R don't depend on the message, so they're worked out once; each further candidate only
+     * costs a hash and a multiple of G from the precomputed table.
+     * @return the matching key, or null if no candidate recovers to the address
+     */
+    public static ECPublicKeyParameters recoverEthPublicKeyFromPersonalSignature(byte[] signature, String address, byte[]... candidateMessages) {
+        byte[][] digests = new byte[candidateMessages.length][];
+        for (int i = 0; i < candidateMessages.length; i++) {
+            digests[i] = AttestationCrypto.hashWithKeccak(convertToPersonalEthMessage(candidateMessages[i]));
+        }
+
+        BigInteger[] rs = decodeEthereumSignature(signature);
+        BigInteger n = ECDSA_DOMAIN.getN();
+        ECPoint R = computeY(rs[0], (byte) (1 - (signature[64] % 2)), ECDSA_DOMAIN);
+        BigInteger rInverse = rs[0].modInverse(n);
+        ECPoint u2R = R.multiply(rs[1].multiply(rInverse).mod(n));
+
+        for (byte[] digest : digests) {
+            BigInteger u1 = new BigInteger(1, digest).multiply(rInverse).mod(n);
+            ECPublicKeyParameters key = new ECPublicKeyParameters(u2R.subtract(multiplyBase(u1)).normalize(), ECDSA_DOMAIN);
+            if (verifyKeyAgainstAddress(key, address)) {
+                return key;
+            }
+        }
+        return null;
+    }
+
     public static ECPublicKeyParameters recoverEthPublicKeyFromSignature(byte[] message, byte[] signature) {
+        BigInteger[] rs = decodeEthereumSignature(signature);
+        byte recoveryValue = signature[64];
+        byte yParity = (byte) (1 - (recoveryValue % 2));
+        return computePublicKeyFromSignature(rs, yParity, message);
+    }
+
+    /**
+     * {r, s} of a 65 byte r || s || v signature
+     */
+    static BigInteger[] decodeEthereumSignature(byte[] signature) {
         byte[] rBytes = Arrays.copyOfRange(signature, 0, 32);
         BigInteger r = new BigInteger(1, rBytes);
         byte[] sBytes = Arrays.copyOfRange(signature, 32, 64);
         BigInteger s = new BigInteger(1, sBytes);
-        if (s.compareTo(ECDSA_DOMAIN.getN().shiftRight(1)) > 0) {
+        if (s.compareTo(HALF_CURVE_ORDER) > 0) {
             throw new IllegalArgumentException("The s value is not normalized and thus is not allowed by Ethereum EIP2");
         }
-        byte recoveryValue = signature[64];
-        byte yParity = (byte) (1 - (recoveryValue % 2));
-        return computePublicKeyFromSignature(new BigInteger[]{r, s}, yParity, message);
+        return new BigInteger[]{r, s};
     }
 
     private static ECPublicKeyParameters computePublicKeyFromSignature(BigInteger[] signature, byte yParity, byte[] unsignedMessage) {
@@ -443,28 +504,27 @@ public class SignatureUtility {
         BigInteger rInverse = signature[0].modInverse(ECDSA_DOMAIN.getN());
         BigInteger u1 = z.multiply(rInverse).mod(ECDSA_DOMAIN.getN());
         BigInteger u2 = signature[1].multiply(rInverse).mod(ECDSA_DOMAIN.getN());
-        ECPoint publicKeyPoint = R.multiply(u2).subtract(ECDSA_DOMAIN.getG().multiply(u1)).normalize();
+        // Q = u2*R - u1*G, as one simultaneous (Shamir) multiply sharing the doublings between both scalars
+        BigInteger minusU1 = ECDSA_DOMAIN.getN().subtract(u1).mod(ECDSA_DOMAIN.getN());
+        ECPoint publicKeyPoint = ECAlgorithms.sumOfTwoMultiplies(R, u2, ECDSA_DOMAIN.getG(), minusU1).normalize();
         return new ECPublicKeyParameters(publicKeyPoint, ECDSA_DOMAIN);
     }
 
-    private static ECPoint computeY(BigInteger x, byte yParity, ECDomainParameters params) {
-        BigInteger P = params.getCurve().getField().getCharacteristic();
-        BigInteger A = params.getCurve().getA().toBigInteger();
-        BigInteger B = params.getCurve().getB().toBigInteger();
-        BigInteger ySquared = x.modPow(new BigInteger("3"), P).
-            add(A.multiply(x)).
-            add(B).mod(P);
-        // We use the Lagrange trick to compute the squareroot (since fieldSize mod 4=3)
-        BigInteger y = ySquared.modPow(P.add(BigInteger.ONE).shiftRight(2), P);
-        if (y.mod(new BigInteger("2")).byteValueExact() != yParity) {
-            y = P.subtract(y);
-        }
-        return params.getCurve().createPoint(x, y);
+    /**
+     * The point with x coordinate x and the given y parity, from its compressed encoding so the curve's own field
+     * arithmetic takes the square root
+     */
+    static ECPoint computeY(BigInteger x, byte yParity, ECDomainParameters params) {
+        int fieldBytes = (params.getCurve().getFieldSize() + 7) / 8;
+        byte[] compressed = new byte[fieldBytes + 1];
+        compressed[0] = (byte) (0x02 + (yParity & 1));
+        BigIntegers.asUnsignedByteArray(x, compressed, 1, fieldBytes);
+        return params.getCurve().decodePoint(compressed);
     }
 
     private static BigInteger normalizeS(BigInteger s, ECDomainParameters params) {
         // Normalize number s to be the lowest of its two legal values
-        BigInteger half_curve = params.getCurve().getOrder().shiftRight(1);
+        BigInteger half_curve = params == ECDSA_DOMAIN ? HALF_CURVE_ORDER : params.getN().shiftRight(1);
         if (s.compareTo(half_curve) > 0) {
             return params.getN().subtract(s);
         }